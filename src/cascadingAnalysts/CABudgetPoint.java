@@ -0,0 +1,22 @@
+package cascadingAnalysts;
+
+import genericStructures.ReconstructionError;
+
+import java.util.List;
+
+// the result of Cascading Analysts for one budget of an error curve, see CALattice.getErrorCurve()
+public class CABudgetPoint {
+    public int budget;
+    public List<CALatticeNode> summary;
+    public int size; // number of nodes in the summary set, at most the budget
+    public ReconstructionError error;
+    public double averageError; // error.sum over the number of leaves of the lattice
+
+    CABudgetPoint(int budget, List<CALatticeNode> summary, ReconstructionError error, int leaves) {
+        this.budget = budget;
+        this.summary = summary;
+        this.size = summary.size();
+        this.error = error;
+        this.averageError = error.sum / leaves;
+    }
+}
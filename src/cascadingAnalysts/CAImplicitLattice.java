@@ -0,0 +1,263 @@
+package cascadingAnalysts;
+
+import genericStructures.Lattice;
+import genericStructures.ReconstructionError;
+import genericStructures.Session;
+import genericStructures.SummaryArtifact;
+import utilities.Utility;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.exp;
+import static java.lang.Math.log;
+
+// Cascading Analysts on an implicit lattice: no LatticeNode is ever created. The children of a cell are
+// computed from its coordinates by the LatticeIndex, and the per-cell state (value, best weight per summary
+// size and the choices of the dynamic program) is kept in arrays indexed by cell id.
+// Cells are summarized level by level from the deepest one up, and the weights of a level are freed as soon
+// as the level above it is done, same as CALatticeNode.summarizeSpaceEfficient(). The choices are kept, and
+// the final set is collected through them once at the end.
+public class CAImplicitLattice extends Lattice {
+    private int maxOutputSize;
+    private boolean takeLog;
+    private double[] values; // leaf values (log of them if takeLog), sum of the leaf values for intermediate cells
+    private boolean[] leaves;
+    // the best solutions of the sub-lattice of an intermediate cell, one per size from 0 to the lattice size. A leaf
+    // keeps none of these arrays: its solution of any size from 1 is itself, with its own weight
+    private double[][] weights; // weights[cell][t] is the weight of the best solution of size t
+    private int[][] choices; // choices[cell][t] is SINGLETON, EMPTY or the dimension of the union of children solutions
+    private int[][][][] splits; // splits[cell][dim] are the choices of the dynamic program of the union, see combine()
+    private static final int EMPTY = -1;
+    private static final int SINGLETON = -2;
+    private int[] finalSet; // collected by getFinalSet()
+    private double[] reconstructedValues;
+
+    public CAImplicitLattice(Session session, boolean takeLogArg, int summarySize) {
+        super(session);
+        takeLog = takeLogArg;
+        maxOutputSize = summarySize;
+        createImplicitLattice();
+        int size = index.size();
+        values = new double[size];
+        leaves = new boolean[size];
+        weights = new double[size][];
+        choices = new int[size][];
+        splits = new int[size][][][];
+        for (int cell = 0; cell < size; cell++) {
+            leaves[cell] = index.isLeaf(cell);
+            if (leaves[cell]) {
+                double value = getLeafValue(cell);
+                values[cell] = takeLog ? log(value) : value;
+            }
+        }
+    }
+
+    @Override
+    public double getValue(int cell) {
+        return values[cell];
+    }
+
+    // a value of each intermediate cell is the sum of the values of its children
+    public void calculateValues() {
+        for (int cell = index.size() - 1; cell >= 0; cell--) {
+            if (!leaves[cell]) {
+                for (int dim = 0; dim < dims; dim++) {
+                    double tempVal = 0;
+                    for (int i = 0; i < index.getChildCount(cell, dim); i++)
+                        tempVal += values[index.getChild(cell, dim, i)];
+                    if (index.getChildCount(cell, dim) > 0)
+                        values[cell] = tempVal;
+                }
+            }
+        }
+    }
+
+    public void summarize() {
+        int[] levelStarts = new int[index.getMaxLevel() + 2];
+        int[] cells = index.getCellsByLevel(levelStarts);
+        for (int level = levelStarts.length - 2; level >= 0; level--) {
+            if (session.parallelSummarization) // the cells of a level only read the state of the level below
+                IntStream.range(levelStarts[level], levelStarts[level + 1]).parallel().forEach(i -> summarizeCell(cells[i]));
+            else {
+                for (int i = levelStarts[level]; i < levelStarts[level + 1]; i++)
+                    summarizeCell(cells[i]);
+            }
+            // freeing memory of the level below
+            if (level + 1 < levelStarts.length - 1) {
+                for (int i = levelStarts[level + 1]; i < levelStarts[level + 2]; i++)
+                    weights[cells[i]] = null;
+            }
+        }
+    }
+
+    private void summarizeCell(int cell) {
+        if (leaves[cell])
+            return;
+        weights[cell] = new double[maxOutputSize + 1];
+        choices[cell] = new int[maxOutputSize + 1];
+        choices[cell][0] = EMPTY;
+        splits[cell] = new int[dims][][];
+        boolean first = true;
+        for (int dim = 0; dim < dims; dim++) {
+            if (index.getChildCount(cell, dim) > 0) {
+                combine(cell, dim, first);
+                first = false;
+            }
+        }
+    }
+
+    // the same dynamic program as CALatticeNode.combine(), over the children of the cell in the given dimension
+    private void combine(int cell, int dim, boolean first) {
+        int childNum = index.getChildCount(cell, dim);
+        double weight = Math.abs(values[cell]);
+        double S[][] = new double[childNum + 1][maxOutputSize + 1];
+        int[][] split = new int[childNum + 1][];
+        double[] leafWeights = null; // weights of a leaf child, the same for all sizes from 1
+        for (int m = 1; m <= childNum; m++) {
+            int child = index.getChild(cell, dim, m - 1);
+            double[] childWeights = weights[child];
+            if (leaves[child]) {
+                if (leafWeights == null)
+                    leafWeights = new double[maxOutputSize + 1];
+                Arrays.fill(leafWeights, 1, maxOutputSize + 1, Math.abs(values[child]));
+                childWeights = leafWeights;
+            }
+            if (m == 1) {
+                System.arraycopy(childWeights, 1, S[m], 1, maxOutputSize);
+                continue;
+            }
+            split[m] = new int[maxOutputSize + 1];
+            MaxPlus.convolve(S[m - 1], childWeights, 1, maxOutputSize, S[m], split[m]);
+        }
+
+        for (int i = 1; i <= maxOutputSize; i++) {
+            if (first || weights[cell][i] < S[childNum][i] || weights[cell][i] < weight) {
+                if (S[childNum][i] <= weight) { // a singleton set {v}
+                    weights[cell][i] = weight;
+                    choices[cell][i] = SINGLETON;
+                } else {
+                    // or the largest union of children weights
+                    weights[cell][i] = S[childNum][i];
+                    choices[cell][i] = dim;
+                    splits[cell][dim] = split;
+                }
+            }
+        }
+    }
+
+    // writes the cells of the solution of the given size of the cell to solution from position n, by following the
+    // choices of the dynamic program down from the cell, and returns the position after them
+    private int collectSolution(int cell, int size, int[] solution, int n) {
+        if (size == 0)
+            return n;
+        if (leaves[cell] || choices[cell][size] == SINGLETON) {
+            solution[n] = cell;
+            return n + 1;
+        }
+        if (choices[cell][size] == EMPTY)
+            return n;
+
+        int dim = choices[cell][size];
+        int childNum = index.getChildCount(cell, dim);
+        int[] sizes = new int[childNum]; // size of the solution of each child in the union
+        int j = size;
+        for (int m = childNum; m >= 1 && j > 0; m--) {
+            if (m == 1) {
+                sizes[0] = j;
+                break;
+            }
+            int p = splits[cell][dim][m][j];
+            if (p < 0)
+                break; // the first m children take no cell
+            sizes[m - 1] = j - p;
+            j = p;
+        }
+        for (int m = 0; m < childNum; m++)
+            n = collectSolution(index.getChild(cell, dim, m), sizes[m], solution, n);
+        return n;
+    }
+
+    // the cells of the best solution of the lattice size, collected once
+    public int[] getFinalSet() {
+        if (finalSet == null) {
+            int[] solution = new int[maxOutputSize];
+            finalSet = Arrays.copyOf(solution, collectSolution(0, maxOutputSize, solution, 0));
+        }
+        return finalSet;
+    }
+
+    public int getFinalSize() {
+        return getFinalSet().length;
+    }
+
+    public ReconstructionError getReconstructionError(BufferedWriter bw) throws Exception {
+        ReconstructionError error = new ReconstructionError();
+        reconstructedValues = new double[index.size()];
+        for (int cell : getFinalSet()) {
+            int descNum = getLeafDescendantNum(cell);
+            setReconstructedValue(cell, values[cell] / descNum);
+        }
+
+        for (int cell = 0; cell < index.size(); cell++) {
+            if (leaves[cell]) {
+                double origVal = getLeafValue(cell);
+                double recVal;
+                if (takeLog)
+                    recVal = exp(reconstructedValues[cell]);
+                else recVal = reconstructedValues[cell];
+                double e = Utility.calculateSMAPE(origVal, recVal);
+                if (values[cell] == 0 && reconstructedValues[cell] == 0)
+                    e = 0;
+                if (bw != null)
+                    bw.write(e + ",");
+                error.sum += e;
+                if (e > error.worst) {
+                    error.worst = e;
+                }
+            }
+        }
+        return error;
+    }
+
+    // compiles the summary for lookups, same as CALattice.writeArtifact()
+    public void writeArtifact(String filename) throws IOException {
+        int[] cells = getFinalSet();
+        double[] weights = new double[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            double val = values[cells[i]] / getLeafDescendantNum(cells[i]);
+            weights[i] = takeLog ? exp(val) : val;
+        }
+        SummaryArtifact.write(index, cells, weights, false, takeLog ? exp(0) : 0, filename);
+    }
+
+    private int getLeafDescendantNum(int cell) {
+        int num = 1;
+        for (int d = 0; d < dims; d++)
+            num *= index.getMember(cell, d).totalLeaves();
+        return num;
+    }
+
+    private void setReconstructedValue(int cell, double val) {
+        if (leaves[cell]) {
+            reconstructedValues[cell] = val;
+        } else {
+            for (int d = 0; d < dims; d++) {
+                if (index.getChildCount(cell, d) > 0) {
+                    for (int i = 0; i < index.getChildCount(cell, d); i++)
+                        setReconstructedValue(index.getChild(cell, d, i), val);
+                    break; // only important to get reconstructed values to the leaf nodes
+                }
+            }
+        }
+    }
+
+    public void printSets() {
+        int[] solution = getFinalSet();
+        System.out.println("There are " + solution.length + " nodes in the summary set:");
+        for (int cell : solution)
+            System.out.println(index.getName(cell) + ": " + values[cell]);
+    }
+}
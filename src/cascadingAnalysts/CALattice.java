@@ -1,13 +1,16 @@
 package cascadingAnalysts;
 
 import genericStructures.ReconstructionError;
-import main.Main;
 import genericStructures.Lattice;
 import genericStructures.LatticeNode;
+import genericStructures.Session;
+import genericStructures.SummaryArtifact;
 import genericStructures.SummaryType;
 import utilities.Utility;
 
 import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -15,35 +18,86 @@ import static java.lang.Math.exp;
 
 public class CALattice extends Lattice {
 
-    public static int MAX_OUTPUT_SIZE;
-    public static HashMap<Integer, List<CALatticeNode>> levelMap; //map of level number (depth) and corresponding nodes
-    static boolean takeLog;
+    int maxOutputSize;
+    HashMap<Integer, List<CALatticeNode>> levelMap; //map of level number (depth) and corresponding nodes
+    boolean takeLog;
+    boolean parallelLevels; // summarize the nodes of a level concurrently, see CALatticeNode.summarizeSpaceEfficient()
+    // keep the whole dynamic program of every node (even in level by level mode), so that extend() can raise the
+    // lattice size later. Must be set before summarizing, and takes about 3 times the memory of the choices alone
+    public boolean extensible = false;
 
-    public CALattice(String[] files, boolean takeLogArg, boolean levelByLevel, int summarySize) {
-        super(files);
+    public CALattice(Session session, boolean takeLogArg, boolean levelByLevel, int summarySize) {
+        super(session);
         takeLog = takeLogArg;
-        MAX_OUTPUT_SIZE = summarySize;
+        maxOutputSize = summarySize;
+        parallelLevels = session.parallelSummarization;
         if (levelByLevel) {
-            levelMap = new HashMap<>();
-            createLattice(files, SummaryType.CascadingAnalystsLevelByLevel);
+            createLattice(SummaryType.CascadingAnalystsLevelByLevel);
+            buildLevels();
         } else {
-            createLattice(files, SummaryType.CascadingAnalysts);
+            createLattice(SummaryType.CascadingAnalysts);
         }
     }
 
+    // levels are filled in id order after the nodes are built, so that they are the same for sequential and parallel construction
+    private void buildLevels() {
+        levelMap = new HashMap<>();
+        for (LatticeNode node : nodes) {
+            int level = index.getLevel(node.id);
+            if (!levelMap.containsKey(level))
+                levelMap.put(level, new ArrayList<>());
+            levelMap.get(level).add((CALatticeNode) node);
+        }
+    }
+
+    // Raises the lattice size of a summarized extensible lattice to the given one. The solutions of the sizes up to
+    // the current one are kept, and only the larger ones are computed, with the same result as a lattice of the
+    // new size summarized from scratch
+    public void extend(int summarySize) {
+        if (!extensible)
+            throw new IllegalStateException("Only an extensible lattice keeps what extend() needs");
+        if (summarySize <= maxOutputSize)
+            return;
+        maxOutputSize = summarySize;
+        for (LatticeNode node : nodes)
+            ((CALatticeNode) node).reopen();
+        if (levelMap == null)
+            ((CALatticeNode) root).summarize();
+        else ((CALatticeNode) root).summarizeSpaceEfficient();
+    }
+
+    // the summary set and its reconstruction error for every size from 1 to the lattice size, all from the one
+    // summarization of the lattice, in increasing order of size
+    public List<CABudgetPoint> getErrorCurve() throws Exception {
+        List<CABudgetPoint> points = new ArrayList<>();
+        int leaves = getLatticeLeavesNum();
+        for (int size = 1; size <= maxOutputSize; size++) {
+            List<CALatticeNode> solution = ((CALatticeNode) root).getFinalSet(size);
+            points.add(new CABudgetPoint(size, solution, getReconstructionError(solution, null), leaves));
+        }
+        return points;
+    }
+
     public ReconstructionError getReconstructionError(BufferedWriter bw) throws Exception {
+        return getReconstructionError(((CALatticeNode) root).getFinalSet(), bw);
+    }
+
+    private ReconstructionError getReconstructionError(List<CALatticeNode> solution, BufferedWriter bw) throws Exception {
         ReconstructionError error = new ReconstructionError();
-        Solution solution = ((CALatticeNode) root).getFinalSet();
+        for (LatticeNode node : nodes) {
+            if (node.isLeaf)
+                ((CALatticeNode) node).setReconstructedValue(0); // leaves that no node of the solution covers
+        }
 
-        for (CALatticeNode node : solution.nodes) {
+        for (CALatticeNode node : solution) {
             int descNum = node.getLeafDescendantNum();
             double val = node.getValue() / descNum;
             node.setReconstructedValue(val);
         }
 
-        for (LatticeNode node : map.values()) {
+        for (LatticeNode node : nodes) {
             if (node.isLeaf) {
-                double origVal = Main.valMap.get(node.name);
+                double origVal = getLeafValue(node.id);
                 double recVal;
                 if (takeLog)
                     recVal = exp(((CALatticeNode) node).getReconstructedValue());
@@ -63,15 +117,29 @@ public class CALattice extends Lattice {
     }
 
     public void printSets() {
-        Solution solution = ((CALatticeNode) root).getFinalSet();
-        System.out.println("There are " + solution.nodes.size() + " nodes in the summary set:");
-        for (CALatticeNode n : solution.nodes)
-            System.out.println(n.name + ": " + n.getValue());
+        List<CALatticeNode> solution = ((CALatticeNode) root).getFinalSet();
+        System.out.println("There are " + solution.size() + " nodes in the summary set:");
+        for (CALatticeNode n : solution)
+            System.out.println(n.getName() + ": " + n.getValue());
+    }
+
+    // compiles the summary for lookups, see SummaryArtifact. Leaves that no cell of the solution covers are
+    // reconstructed as 0 (1 with takeLog), same as in getReconstructionError()
+    public void writeArtifact(String filename) throws IOException {
+        List<CALatticeNode> solution = ((CALatticeNode) root).getFinalSet();
+        int[] cells = new int[solution.size()];
+        double[] weights = new double[solution.size()];
+        for (int i = 0; i < cells.length; i++) {
+            CALatticeNode node = solution.get(i);
+            double val = node.getValue() / node.getLeafDescendantNum();
+            cells[i] = node.id;
+            weights[i] = takeLog ? exp(val) : val;
+        }
+        SummaryArtifact.write(index, cells, weights, false, takeLog ? exp(0) : 0, filename);
     }
 
     public int getFinalSize() {
-        Solution solution = ((CALatticeNode) root).getFinalSet();
-        return solution.nodes.size();
+        return ((CALatticeNode) root).getFinalSet().size();
     }
 
 }
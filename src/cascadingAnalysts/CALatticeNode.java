@@ -5,7 +5,6 @@ import genericStructures.LatticeNode;
 
 import java.util.*;
 
-import static cascadingAnalysts.CALattice.MAX_OUTPUT_SIZE;
 import static java.lang.Math.log;
 
 // refer to https://dl.acm.org/citation.cfm?id=3183713.3183745
@@ -18,41 +17,48 @@ import static java.lang.Math.log;
 
 public class CALatticeNode extends LatticeNode {
 
-    private Map<Integer, Solution> allSets; // map of max weight solution per map-key num of nodes
+    // the max weight solutions of the sub-lattice of the node, one per size from 0 to the lattice size. A leaf
+    // keeps none of these arrays: its solution of any size from 1 is itself, with its own weight
+    private double[] weights; // max weight per size, freed once the parents are summarized in level by level mode
+    private int[] choices; // per size: SINGLETON, EMPTY or the dimension of the union of children solutions
+    private int[][][] splits; // dimension as index, choices of the dynamic program of the union, see combine()
+    private double[][][] unions; // dimension as index, weights S of the dynamic program, kept if the lattice is extensible
+    private static final int EMPTY = -1;
+    private static final int SINGLETON = -2;
     private double weight;
     private double reconstructedValue = 0;
     private boolean summarized = false;
+    private List<CALatticeNode> finalSet; // collected by getFinalSet()
 
-    public CALatticeNode(String name) {
-        super(name);
-        allSets = new HashMap<>();
+    public CALatticeNode(Lattice lattice, int id) {
+        super(lattice, id);
     }
 
     @Override
     public void setValue(double value) {
-        if (CALattice.takeLog)
+        if (getLattice().takeLog)
             this.value = log(value);
         else this.value = value;
         this.isLeaf = !Double.isNaN(value);
     }
 
+    private CALattice getLattice() {
+        return (CALattice) lattice;
+    }
+
     public void summarize() {
         if (!summarized) {
-            if (isLeaf) {
-                List<CALatticeNode> l = new ArrayList<>();
-                l.add(this);
-                allSets.put(0, new Solution(new ArrayList<>(), 0));
-                allSets.put(1, new Solution(l, weight));
-            } else {
-                for (List childrenList : children) {
-                    if (!childrenList.isEmpty()) {
-                        for (Object child : childrenList) {
-                            if (!((CALatticeNode) child).summarized) {
-                                ((CALatticeNode) child).summarize();
+            if (!isLeaf) {
+                int from = getSummarizedSize() + 1;
+                for (int dim = 0; dim < lattice.getDims(); dim++) {
+                    if (hasChildren(dim)) {
+                        for (int i = 0; i < getChildCount(dim); i++) {
+                            CALatticeNode child = (CALatticeNode) getChild(dim, i);
+                            if (!child.summarized) {
+                                child.summarize();
                             }
                         }
-                        allSets.put(0, new Solution(new ArrayList<>(), 0));
-                        combine(childrenList);
+                        combine(dim, from);
                     }
                 }
             }
@@ -60,104 +66,160 @@ public class CALatticeNode extends LatticeNode {
         summarized = true;
     }
 
-    // same as previous summarize() but does it level by level and
-    // empties the previous levels when done
+    // same as previous summarize() but does it level by level. The weights of a level are freed once the level
+    // above is summarized, while the choices of every level are kept, since the final set is collected through them.
+    // A node only reads the weights of its children, which are all on the level below, and only writes its own
+    // state, so with Session.parallelSummarization the nodes of a level are summarized concurrently on the common
+    // ForkJoinPool. The next level starts once all of them are done
     public void summarizeSpaceEfficient() {
-        int maxLevel = Collections.max(CALattice.levelMap.keySet());
+        Map<Integer, List<CALatticeNode>> levelMap = getLattice().levelMap;
+        int maxLevel = Collections.max(levelMap.keySet());
         for (int i = maxLevel; i >= 0; i--) {
-            summarizeSpaceEfficientHelper(CALattice.levelMap.get(i));
-            //freeing memory
-            if (i < maxLevel)
-                freeMemory(CALattice.levelMap.get(i + 1));
+            if (getLattice().parallelLevels)
+                levelMap.get(i).parallelStream().forEach(CALatticeNode::summarizeNode);
+            else summarizeSpaceEfficientHelper(levelMap.get(i));
+            if (i < maxLevel && !getLattice().extensible) {
+                for (CALatticeNode node : levelMap.get(i + 1))
+                    node.weights = null;
+            }
         }
     }
 
     private void summarizeSpaceEfficientHelper(List<CALatticeNode> nodesAtLevel) {
-        for (CALatticeNode node : nodesAtLevel) {
-            if (node.isLeaf) {
-                List<CALatticeNode> l = new ArrayList<>();
-                l.add(node);
-                node.allSets.put(0, new Solution(new ArrayList<>(), 0));
-                node.allSets.put(1, new Solution(l, node.weight));
-            } else {
-                for (List childrenSet : node.children) {
-                    if (!childrenSet.isEmpty()) {
-                        node.allSets.put(0, new Solution(new ArrayList<>(), 0));
-                        node.combine(childrenSet);
-                    }
+        for (CALatticeNode node : nodesAtLevel)
+            node.summarizeNode();
+    }
+
+    // summarizes the node from the solutions of its children, which must be summarized already
+    private void summarizeNode() {
+        if (!isLeaf) {
+            int from = getSummarizedSize() + 1;
+            for (int dim = 0; dim < lattice.getDims(); dim++) {
+                if (hasChildren(dim)) {
+                    combine(dim, from);
                 }
             }
         }
     }
 
-    private void freeMemory(List<CALatticeNode> nodesAtLevel) {
-        for (LatticeNode node : nodesAtLevel) {
-            ((CALatticeNode) node).allSets = null; // to be garbage collected
-        }
+    // the largest size the solutions of the node were computed for, 0 if it was not summarized yet
+    private int getSummarizedSize() {
+        return choices == null ? 0 : choices.length - 1;
     }
 
-    private void combine(List<CALatticeNode> list) {
-        double S[][] = new double[list.size() + 1][MAX_OUTPUT_SIZE + 1];
-        List<List<List<CALatticeNode>>> solutions = new ArrayList<>(); // makes an equivalent of 2 dim array where each element is a list of included nodes
-        solutions.add(null); // placeholder to match index in paper (for easier understanding)
-        for (int m = 1; m <= list.size(); m++) {
-            solutions.add(new ArrayList<>());
-            solutions.get(m).add(new ArrayList<>()); // placeholder to match index in paper (for easier understanding)
-            int t;
-            for (int j = 1; j <= MAX_OUTPUT_SIZE; j++) {
-                List<CALatticeNode> temp = new ArrayList<>();
-                if (m == 1) {
-                    t = j;
-                    if (list.get(m - 1).isLeaf && t > 1) // to not store the same weight at the leaf k times
-                        t = 1;
-                    S[m][j] = list.get(m - 1).allSets.get(t).weight;
-                    temp.addAll(list.get(m - 1).allSets.get(t).nodes);
-                } else {
-                    double maxWeight = 0;
-                    for (int p = 0; p <= j; p++) {
-                        int q = j - p;
-                        t = q;
-                        if (list.get(m - 1).isLeaf && t > 1) // to not store the same weight at the leaf k times
-                            t = 1;
-                        double union = S[m - 1][p] + list.get(m - 1).allSets.get(t).weight;
-                        if (maxWeight < union) {
-                            maxWeight = union;
-                            temp.clear();
-                            temp.addAll(solutions.get(m - 1).get(p));
-                            temp.addAll(list.get(m - 1).allSets.get(t).nodes);
-                        }
-                    }
-                    S[m][j] = maxWeight;
-                }
-                solutions.get(m).add(temp);
+    // prepares the node for a larger lattice size, see CALattice.extend(). The solutions of the sizes computed
+    // so far are kept, and summarizing again only computes the new ones
+    void reopen() {
+        summarized = false;
+        finalSet = null;
+    }
+
+    // combines the solutions of the children in the given dimension. S[m][j] is the max weight of a union of
+    // solutions of the first m children with j nodes in total, and splits[m][j] is the number of these nodes
+    // that come from the first m - 1 children (-1 if the union is empty), both computed by MaxPlus.convolve().
+    // The union of the first child alone is its own solution of size j, so only the weights are copied and no
+    // node list is ever built. Only the sizes from the given one up are computed: the smaller ones are kept from
+    // a previous lattice size, along with S and the splits of every dimension, if the lattice is extensible
+    private void combine(int dim, int from) {
+        int childNum = getChildCount(dim);
+        int maxOutputSize = getLattice().maxOutputSize;
+        double S[][] = new double[childNum + 1][];
+        int[][] splits = new int[childNum + 1][];
+        for (int m = 1; m <= childNum; m++) {
+            S[m] = from > 1 ? Arrays.copyOf(unions[dim][m], maxOutputSize + 1) : new double[maxOutputSize + 1];
+            if (m > 1)
+                splits[m] = from > 1 ? Arrays.copyOf(this.splits[dim][m], maxOutputSize + 1) : new int[maxOutputSize + 1];
+        }
+        double[] leafWeights = null; // weights of a leaf child, the same for all sizes from 1
+        for (int m = 1; m <= childNum; m++) {
+            CALatticeNode child = (CALatticeNode) getChild(dim, m - 1);
+            double[] childWeights = child.weights;
+            if (child.isLeaf) {
+                if (leafWeights == null)
+                    leafWeights = new double[maxOutputSize + 1];
+                Arrays.fill(leafWeights, 1, maxOutputSize + 1, child.weight);
+                childWeights = leafWeights;
             }
+            if (m == 1) {
+                System.arraycopy(childWeights, from, S[m], from, maxOutputSize + 1 - from);
+                continue;
+            }
+            MaxPlus.convolve(S[m - 1], childWeights, from, maxOutputSize, S[m], splits[m]);
         }
 
-        for (int i = 1; i <= MAX_OUTPUT_SIZE; i++) {
-            if (!allSets.containsKey(i) || (allSets.containsKey(i) &&
-                    (allSets.get(i).weight < S[list.size()][i] || allSets.get(i).weight < weight))) {
-                if (S[list.size()][i] <= weight) { // a singleton set {v}
-                    List<CALatticeNode> temp = new ArrayList<>();
-                    temp.add(this);
-                    allSets.put(i, new Solution(temp, weight));
+        boolean first = getSummarizedSize() < maxOutputSize; // no dimension was combined for the new sizes yet
+        if (first) {
+            if (choices == null) {
+                weights = new double[maxOutputSize + 1];
+                choices = new int[maxOutputSize + 1];
+                this.splits = new int[lattice.getDims()][][];
+                choices[0] = EMPTY;
+            } else {
+                weights = Arrays.copyOf(weights, maxOutputSize + 1);
+                choices = Arrays.copyOf(choices, maxOutputSize + 1);
+            }
+        }
+        for (int i = from; i <= maxOutputSize; i++) {
+            if (first || weights[i] < S[childNum][i] || weights[i] < weight) {
+                if (S[childNum][i] <= weight) { // a singleton set {v}
+                    weights[i] = weight;
+                    choices[i] = SINGLETON;
                 } else {
                     // or the largest union of children weights
-                    allSets.put(i, new Solution(solutions.get(list.size()).get(i), S[list.size()][i]));
+                    weights[i] = S[childNum][i];
+                    choices[i] = dim;
+                    this.splits[dim] = splits;
                 }
             }
         }
+        if (getLattice().extensible) {
+            if (unions == null)
+                unions = new double[lattice.getDims()][][];
+            unions[dim] = S;
+            this.splits[dim] = splits;
+        }
     }
 
+    // appends the nodes of the solution of the given size to the list, by following the choices of the dynamic
+    // program down from this node
+    private void collectSolution(int size, List<CALatticeNode> nodes) {
+        if (size == 0)
+            return;
+        if (isLeaf || choices[size] == SINGLETON) {
+            nodes.add(this);
+            return;
+        }
+        if (choices[size] == EMPTY)
+            return;
+
+        int dim = choices[size];
+        int childNum = getChildCount(dim);
+        int[] sizes = new int[childNum]; // size of the solution of each child in the union
+        int j = size;
+        for (int m = childNum; m >= 1 && j > 0; m--) {
+            if (m == 1) {
+                sizes[0] = j;
+                break;
+            }
+            int p = splits[dim][m][j];
+            if (p < 0)
+                break; // the first m children take no node
+            sizes[m - 1] = j - p;
+            j = p;
+        }
+        for (int m = 0; m < childNum; m++)
+            ((CALatticeNode) getChild(dim, m)).collectSolution(sizes[m], nodes);
+    }
 
     // a value for each node is the sum of values of nodes' children
     public double calculateValue() {
         if (!isLeaf && Double.isNaN(value)) {
-            for (List<LatticeNode> list : children) {
+            for (int dim = 0; dim < lattice.getDims(); dim++) {
                 double tempVal = 0;
-                for (LatticeNode node : list) {
-                    tempVal += ((CALatticeNode) node).calculateValue();
+                for (int i = 0; i < getChildCount(dim); i++) {
+                    tempVal += ((CALatticeNode) getChild(dim, i)).calculateValue();
                 }
-                if (!list.isEmpty())
+                if (hasChildren(dim))
                     value = tempVal;
             }
         }
@@ -166,10 +228,10 @@ public class CALatticeNode extends LatticeNode {
     }
 
     public void printValues() {
-        System.out.println(name + ": " + value);
-        for (List<LatticeNode> l : children) {
-            for (LatticeNode child : l) {
-                ((CALatticeNode) child).printValues(1);
+        System.out.println(getName() + ": " + value);
+        for (int dim = 0; dim < lattice.getDims(); dim++) {
+            for (int i = 0; i < getChildCount(dim); i++) {
+                ((CALatticeNode) getChild(dim, i)).printValues(1);
             }
         }
     }
@@ -177,16 +239,26 @@ public class CALatticeNode extends LatticeNode {
     private void printValues(int spaces) {
         for (int i = 0; i < spaces; i++)
             System.out.print("  ");
-        System.out.println(name + ": " + value + " | " + reconstructedValue);
-        for (List<LatticeNode> l : children) {
-            for (LatticeNode child : l) {
-                ((CALatticeNode) child).printValues(spaces + 1);
+        System.out.println(getName() + ": " + value + " | " + reconstructedValue);
+        for (int dim = 0; dim < lattice.getDims(); dim++) {
+            for (int i = 0; i < getChildCount(dim); i++) {
+                ((CALatticeNode) getChild(dim, i)).printValues(spaces + 1);
             }
         }
     }
 
-    Solution getFinalSet() {
-        return allSets.getOrDefault(MAX_OUTPUT_SIZE, null);
+    // the nodes of the max weight solution of the lattice size, collected once
+    List<CALatticeNode> getFinalSet() {
+        if (finalSet == null)
+            finalSet = getFinalSet(getLattice().maxOutputSize);
+        return finalSet;
+    }
+
+    // the nodes of the max weight solution of any size up to the lattice size
+    List<CALatticeNode> getFinalSet(int size) {
+        List<CALatticeNode> solution = new ArrayList<>();
+        collectSolution(size, solution);
+        return solution;
     }
 
     double getReconstructedValue() {
@@ -197,10 +269,10 @@ public class CALatticeNode extends LatticeNode {
         if (isLeaf) {
             reconstructedValue = val;
         } else {
-            for (int d = 0; d < Lattice.dims; d++) {
-                if (!children.get(d).isEmpty()) {
-                    for (LatticeNode child : children.get(d))
-                        ((CALatticeNode) child).setReconstructedValue(val);
+            for (int d = 0; d < lattice.getDims(); d++) {
+                if (hasChildren(d)) {
+                    for (int i = 0; i < getChildCount(d); i++)
+                        ((CALatticeNode) getChild(d, i)).setReconstructedValue(val);
                     break; // only important to get reconstructed values to the leaf nodes
                 }
             }
@@ -0,0 +1,56 @@
+package cascadingAnalysts;
+
+// The (max,+) convolution at the heart of the Cascading Analysts dynamic program:
+//   result[j] = max(0, max over p <= j of a[p] + b[j - p]), split[j] = the first such p (-1 if none beats 0)
+// for from <= j <= n, where a is the curve of the union of the first children and b the curve of the next child.
+// Both curves are max weights of solutions of at most j nodes, so they are nondecreasing, and most of them
+// saturate early: a leaf at 1 node, any node at the size of its sub-lattice. The kernel skips what saturation
+// makes redundant, and gives the same results (the same splits included) as the plain triple loop:
+//   - once b is saturated (j - p >= bSaturation), a[p] + b[j - p] is a[p] + bMax, which is nondecreasing in p.
+//     The first p of the largest of these sums is found in constant time from the runs of equal sums
+//   - once a is saturated (p > aSaturation), a[p] + b[j - p] <= a[aSaturation] + b[j - aSaturation], which was
+//     seen before at a smaller p, so these terms can never be strictly better
+// so the inner loop only runs over the p where neither curve is saturated, e.g. over 2 of them for a leaf.
+class MaxPlus {
+
+    static void convolve(double[] a, double[] b, int from, int n, double[] result, int[] split) {
+        int aSaturation = getSaturation(a, n);
+        int bSaturation = getSaturation(b, n);
+        double bMax = b[n];
+        int[] runStarts = new int[n + 1]; // first p of the run of equal a[p] + bMax that p is in
+        for (int p = 1; p <= n; p++)
+            runStarts[p] = a[p] + bMax == a[p - 1] + bMax ? runStarts[p - 1] : p;
+
+        for (int j = from; j <= n; j++) {
+            double maxWeight = 0;
+            int best = -1;
+            int p = 0;
+            if (j >= bSaturation) {
+                p = j - bSaturation;
+                if (maxWeight < a[p] + bMax) {
+                    maxWeight = a[p] + bMax;
+                    best = runStarts[p];
+                }
+                p++;
+            }
+            int last = Math.min(j, aSaturation);
+            for (; p <= last; p++) {
+                double union = a[p] + b[j - p];
+                if (maxWeight < union) {
+                    maxWeight = union;
+                    best = p;
+                }
+            }
+            result[j] = maxWeight;
+            split[j] = best;
+        }
+    }
+
+    // the smallest size from which the curve keeps its last weight
+    private static int getSaturation(double[] curve, int n) {
+        int saturation = n;
+        while (saturation > 0 && curve[saturation - 1] == curve[n])
+            saturation--;
+        return saturation;
+    }
+}
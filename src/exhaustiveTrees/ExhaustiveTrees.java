@@ -3,16 +3,16 @@ package exhaustiveTrees;
 import genericStructures.Lattice;
 import genericStructures.LatticeNode;
 import genericStructures.ReconstructionError;
+import genericStructures.Session;
 import genericStructures.SummaryType;
 
-import java.util.HashMap;
 import java.util.Stack;
 
 public class ExhaustiveTrees extends Lattice {
-    static double alpha;
+    double alpha;
 
-    static HashMap<String, Integer> nodeDimsMap;
-    static Stack<LatticeNode> traversalStack;
+    int[] nodeDims; // current drill-down dimension of every intermediate node, indexed by slot (see Lattice.getSlot())
+    Stack<LatticeNode> traversalStack;
 
     public ReconstructionError error; // stores errors of the best tree
 
@@ -21,11 +21,11 @@ public class ExhaustiveTrees extends Lattice {
 
     public long totalExecutionTime = 0;
 
-    public ExhaustiveTrees(String[] files, double alphaVal) {
-        super(files);
-        createLattice(files, SummaryType.ExhaustiveTrees);
+    public ExhaustiveTrees(Session session, double alphaVal) {
+        super(session);
+        createLattice(SummaryType.ExhaustiveTrees);
         traversalStack = new Stack<>();
-        nodeDimsMap = new HashMap<>();
+        nodeDims = new int[nodes.length];
         alpha = alphaVal;
         initDimensionsMap();
         ((ExhaustiveTreesNode) root).pushDescendantsToStack();
@@ -55,21 +55,21 @@ public class ExhaustiveTrees extends Lattice {
 
             LatticeNode top = traversalStack.peek();
 
-            int curDim = nodeDimsMap.get(top.name);
+            int curDim = nodeDims[getSlot(top.id)];
             if (curDim >= dims - 1) {// all dimensions explored
                 traversalStack.pop();
             } else {
                 boolean foundDim = false;
                 for (int dim = curDim + 1; dim < dims; dim++) { // find next unexplored dimension
-                    if (!top.children.get(dim).isEmpty()) {
+                    if (top.hasChildren(dim)) {
                         foundDim = true;
-                        nodeDimsMap.put(top.name, dim);
+                        nodeDims[getSlot(top.id)] = dim;
                         treeChanged = true;
 
                         // since it's a new dimension - need to add descendants in the stack
-                        for (LatticeNode child : ((ExhaustiveTreesNode) top).getChildren()) {
-                            ((ExhaustiveTreesNode) child).initNodeDimensions();
-                            ((ExhaustiveTreesNode) child).pushDescendantsToStack();
+                        for (int i = 0; i < ((ExhaustiveTreesNode) top).getCurrentChildCount(); i++) {
+                            ((ExhaustiveTreesNode) top).getCurrentChild(i).initNodeDimensions();
+                            ((ExhaustiveTreesNode) top).getCurrentChild(i).pushDescendantsToStack();
                         }
 
                         for (LatticeNode node : ((ExhaustiveTreesNode) top).getPreviousNodes(root)) {
@@ -85,13 +85,13 @@ public class ExhaustiveTrees extends Lattice {
         }
     }
 
-    // for all intermediate nodes, identify the initial drill-down dimension and save it into a map
+    // for all intermediate nodes, identify the initial drill-down dimension and save it into nodeDims
     private void initDimensionsMap() {
-        for (LatticeNode node : map.values()) {
+        for (LatticeNode node : nodes) {
             if (!node.isLeaf) {
                 for (int dim = 0; dim < dims; dim++) {
-                    if (!node.children.get(dim).isEmpty()) {
-                        nodeDimsMap.put(node.name, dim);
+                    if (node.hasChildren(dim)) {
+                        nodeDims[getSlot(node.id)] = dim;
                         break;
                     }
                 }
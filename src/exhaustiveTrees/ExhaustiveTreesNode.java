@@ -1,43 +1,47 @@
 package exhaustiveTrees;
 
 import genericStructures.*;
-import main.Main;
 import utilities.Utility;
 
 import java.util.*;
 
-import static exhaustiveTrees.ExhaustiveTrees.*;
-
 public class ExhaustiveTreesNode extends LatticeNode {
     private List<Interval> intervals;
     private double rootToLeaf = 0;
     private double weight = 0;
 
-    public ExhaustiveTreesNode(String name) {
-        super(name);
+    public ExhaustiveTreesNode(Lattice lattice, int id) {
+        super(lattice, id);
         intervals = new ArrayList<>();
     }
 
     void computeDS() {
         intervals = new ArrayList<>();
-        if (getChildren().isEmpty()) {
-            double val = Main.valMap.get(name);
+        if (getCurrentChildCount() == 0) {
+            double val = value;
+            double alpha = getLattice().alpha;
             Interval interval = val > 0 ? new Interval(val - val * alpha, val + val * alpha) :
                     new Interval(val + val * alpha, val - val * alpha);
             intervals.add(interval);
         } else {
-            Map<IntervalPoint, IntervalPoint> pointMap = new HashMap<>();
-            List<IntervalPoint> points = new ArrayList<>();
-
-            for (LatticeNode child : getChildren()) {
-                ((ExhaustiveTreesNode) child).computeDS();
-                for (Interval interval : ((ExhaustiveTreesNode) child).intervals) {
-                    Utility.addPointIntervals(pointMap, points, interval);
+            int n = 0;
+            for (int i = 0; i < getCurrentChildCount(); i++) {
+                ExhaustiveTreesNode child = getCurrentChild(i);
+                child.computeDS();
+                n += child.intervals.size();
+            }
+            double[] starts = new double[n];
+            double[] ends = new double[n];
+            n = 0;
+            for (int i = 0; i < getCurrentChildCount(); i++) {
+                for (Interval interval : getCurrentChild(i).intervals) {
+                    starts[n] = interval.start;
+                    ends[n++] = interval.end;
                 }
             }
 
-            if (!points.isEmpty()) {
-                List<double[]> mostOverlappedIntervals = Utility.getMostOverlappedIntervals(points, pointMap);
+            if (n > 0) {
+                List<double[]> mostOverlappedIntervals = Utility.getMostOverlappedIntervals(starts, ends, n);
                 for (double[] overlap : mostOverlappedIntervals) {
                     intervals.add(new Interval(overlap[0], overlap[1]));
                 }
@@ -51,8 +55,8 @@ public class ExhaustiveTreesNode extends LatticeNode {
         weight = proposedInterval.getMidPoint();
         rootToLeaf = weight;
 
-        for (LatticeNode child : getChildren()) {
-            ((ExhaustiveTreesNode) child).weightTreeHelper(rootToLeaf);
+        for (int i = 0; i < getCurrentChildCount(); i++) {
+            getCurrentChild(i).weightTreeHelper(rootToLeaf);
         }
     }
 
@@ -73,8 +77,8 @@ public class ExhaustiveTreesNode extends LatticeNode {
             rootToLeaf = proposedInterval.getMidPoint();
         }
 
-        for (LatticeNode child : getChildren()) {
-            ((ExhaustiveTreesNode) child).weightTreeHelper(rootToLeaf);
+        for (int i = 0; i < getCurrentChildCount(); i++) {
+            getCurrentChild(i).weightTreeHelper(rootToLeaf);
         }
     }
 
@@ -82,16 +86,25 @@ public class ExhaustiveTreesNode extends LatticeNode {
         int count = 0;
         if (weight != 0 || this.equals(root))
             count++;
-        for (LatticeNode child : getChildren()) {
-            count += ((ExhaustiveTreesNode) child).getCurrentSize(root);
+        for (int i = 0; i < getCurrentChildCount(); i++) {
+            count += getCurrentChild(i).getCurrentSize(root);
         }
         return count;
     }
 
-    List<LatticeNode> getChildren() {
+    private ExhaustiveTrees getLattice() {
+        return (ExhaustiveTrees) lattice;
+    }
+
+    // number of children in the current drill-down dimension
+    int getCurrentChildCount() {
         if (!isLeaf)
-            return children.get(nodeDimsMap.get(name));
-        else return children.get(0); // return empty list
+            return getChildCount(getLattice().nodeDims[lattice.getSlot(id)]);
+        else return 0;
+    }
+
+    ExhaustiveTreesNode getCurrentChild(int i) {
+        return (ExhaustiveTreesNode) getChild(getLattice().nodeDims[lattice.getSlot(id)], i);
     }
 
 
@@ -99,11 +112,13 @@ public class ExhaustiveTreesNode extends LatticeNode {
         List<LatticeNode> previousNodes = new ArrayList<>();
         LatticeNode temp = this;
         while (!temp.equals(root)) {
-            for (LatticeNode parent : temp.parents) {
-                if (traversalStack.contains(parent)) {
-                    int dim = nodeDimsMap.get(parent.name);
+            for (int d = 0; d < lattice.getDims(); d++) {
+                LatticeNode parent = temp.getParent(d);
+                if (parent != null && getLattice().traversalStack.contains(parent)) {
+                    int dim = getLattice().nodeDims[lattice.getSlot(parent.id)];
                     boolean afterThisNode = false;
-                    for (LatticeNode node : parent.children.get(dim)) {
+                    for (int i = 0; i < parent.getChildCount(dim); i++) {
+                        LatticeNode node = parent.getChild(dim, i);
                         if (afterThisNode)
                             previousNodes.add(node);
                         if (node.equals(temp))
@@ -118,52 +133,52 @@ public class ExhaustiveTreesNode extends LatticeNode {
     }
 
     void initNodeDimensions() {
-        for (int dim = 0; dim < ExhaustiveTrees.dims; dim++) {
-            if (!children.get(dim).isEmpty()) {
-                nodeDimsMap.put(name, dim);
+        for (int dim = 0; dim < lattice.getDims(); dim++) {
+            if (hasChildren(dim)) {
+                getLattice().nodeDims[lattice.getSlot(id)] = dim;
                 break;
             }
         }
-        for (LatticeNode child : getChildren()) {
-            ((ExhaustiveTreesNode) child).initNodeDimensions();
+        for (int i = 0; i < getCurrentChildCount(); i++) {
+            getCurrentChild(i).initNodeDimensions();
         }
     }
 
     void pushDescendantsToStack() {
         if (!isLeaf)
-            traversalStack.push(this);
-        for (LatticeNode child : getChildren()) {
-            ((ExhaustiveTreesNode) child).pushDescendantsToStack();
+            getLattice().traversalStack.push(this);
+        for (int i = 0; i < getCurrentChildCount(); i++) {
+            getCurrentChild(i).pushDescendantsToStack();
         }
     }
 
     void printCurrentTree() {
-        System.out.println(name);
-        for (LatticeNode child : getChildren()) {
-            ((ExhaustiveTreesNode) child).printSummaryTree(1);
+        System.out.println(getName());
+        for (int i = 0; i < getCurrentChildCount(); i++) {
+            getCurrentChild(i).printSummaryTree(1);
         }
     }
 
     private void printSummaryTree(int spaces) {
         for (int i = 0; i < spaces; i++)
             System.out.print("  ");
-        System.out.println(name);
-        for (LatticeNode child : getChildren()) {
-            if (!child.isLeaf)
-                ((ExhaustiveTreesNode) child).printSummaryTree(spaces + 1);
+        System.out.println(getName());
+        for (int i = 0; i < getCurrentChildCount(); i++) {
+            if (!getCurrentChild(i).isLeaf)
+                getCurrentChild(i).printSummaryTree(spaces + 1);
         }
     }
 
     ReconstructionError getReconstructionError(ReconstructionError error) {
-        if (getChildren().isEmpty()) {
-            double origVal = Main.valMap.get(name);
+        if (getCurrentChildCount() == 0) {
+            double origVal = value;
             double e = Utility.calculateSMAPE(origVal, rootToLeaf);
             error.sum += e;
             if (e > error.worst)
                 error.worst = e;
         } else {
-            for (LatticeNode child : getChildren())
-                ((ExhaustiveTreesNode) child).getReconstructionError(error);
+            for (int i = 0; i < getCurrentChildCount(); i++)
+                getCurrentChild(i).getReconstructionError(error);
         }
         return error;
     }
@@ -0,0 +1,209 @@
+package genericStructures;
+
+import utilities.Utility;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+
+/* The hierarchies of a lattice together with the values of its leaf cells.
+ * The values file has one "cell name;value" line per leaf cell. It is parsed in a single pass into
+ * primitive arrays: the sorted leaf ids (see LatticeIndex.getLeafId()) of the populated leaf cells and
+ * their values, so the memory depends on the number of lines and not on the number of leaf cells of the
+ * cross-product. If every leaf cell is populated the leaf id is the position of the value, otherwise it
+ * is found by binary search. A dataset is passed to every lattice built on it, and the lattices share its
+ * LatticeIndex.
+ */
+
+public class Dataset {
+    private LatticeIndex index;
+    private int[] leafIds; // leaf ids of the populated leaf cells in increasing order, null if all of them are populated
+    private double[] values; // value of each populated leaf cell, in the order of leafIds
+
+    // toRound is a boolean to indicate whether or not you would like to round the
+    // raw values to one decimal place
+    public Dataset(String[] hierarchies, String valuesFile, boolean toRound) throws IOException {
+        TreeNode[] trees = new TreeNode[hierarchies.length]; // dimension # as index, hierarchy root as value
+        for (int i = 0; i < hierarchies.length; i++)
+            trees[i] = HierarchyReader.read(hierarchies[i]);
+        index = new LatticeIndex(trees);
+        readValues(valuesFile, toRound);
+    }
+
+    // values indexed by leaf id, NaN for the leaf cells that are not populated
+    Dataset(LatticeIndex index, double[] values) {
+        this.index = index;
+        int count = 0;
+        for (double value : values)
+            if (!Double.isNaN(value))
+                count++;
+        if (count == values.length) {
+            this.values = values;
+            return;
+        }
+        leafIds = new int[count];
+        this.values = new double[count];
+        count = 0;
+        for (int leafId = 0; leafId < values.length; leafId++) {
+            if (!Double.isNaN(values[leafId])) {
+                leafIds[count] = leafId;
+                this.values[count++] = values[leafId];
+            }
+        }
+    }
+
+    // The lines are read in file order, then sorted by leaf id. A leaf cell that is on several lines keeps its
+    // last value, as if the values were written into an array indexed by leaf id
+    private void readValues(String valuesFile, boolean toRound) throws IOException {
+        long[] lines = new long[1024]; // leaf id in the high half, line number in the low half
+        double[] lineValues = new double[lines.length];
+        int count = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(valuesFile), 1 << 16)) {
+            String line;
+            while ((line = br.readLine()) != null && !line.isEmpty()) {
+                int separator = line.indexOf(';');
+                if (separator < 0)
+                    throw new IOException("Line '" + line + "' of '" + valuesFile + "' was not parsed correctly!");
+                int cell = index.getCell(line.substring(0, separator));
+                int leafId = cell < 0 ? -1 : index.getLeafId(cell);
+                if (leafId < 0)
+                    continue; // one values file serves hierarchies of several sizes (e.g. geo_1 to geo_all)
+                double value = Double.parseDouble(line.substring(separator + 1));
+                if (count == lines.length) {
+                    lines = Arrays.copyOf(lines, 2 * count);
+                    lineValues = Arrays.copyOf(lineValues, 2 * count);
+                }
+                lines[count] = (long) leafId << 32 | count;
+                lineValues[count++] = toRound ? Utility.round(value, 1) : value;
+            }
+        }
+        Arrays.sort(lines, 0, count);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++)
+            if (isLastOfLeaf(lines, lineValues, i, count))
+                distinct++;
+        leafIds = new int[distinct];
+        values = new double[distinct];
+        distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (isLastOfLeaf(lines, lineValues, i, count)) {
+                leafIds[distinct] = (int) (lines[i] >>> 32);
+                values[distinct++] = lineValues[(int) lines[i]];
+            }
+        }
+        if (distinct == index.getLeafCount())
+            leafIds = null;
+    }
+
+    // whether the sorted line i holds the value its leaf cell keeps, a NaN value leaves the cell unpopulated
+    private static boolean isLastOfLeaf(long[] lines, double[] lineValues, int i, int count) {
+        return (i == count - 1 || lines[i] >>> 32 != lines[i + 1] >>> 32) && !Double.isNaN(lineValues[(int) lines[i]]);
+    }
+
+    // Throws if some leaf cells have no value. Only a sparse lattice (Session.sparse) can summarize them, any other
+    // lattice would reconstruct NaN values. The message names the first missing cells
+    public void checkAllValues() {
+        int missing = 0;
+        StringBuilder names = new StringBuilder();
+        if (leafIds == null)
+            return;
+        int next = 0; // position in leafIds of the first populated leaf id not seen yet
+        for (int leafId = 0; leafId < index.getLeafCount(); leafId++) {
+            if (next < leafIds.length && leafIds[next] == leafId) {
+                next++;
+                continue;
+            }
+            if (missing < 10)
+                names.append(missing == 0 ? "'" : ", '").append(index.getName(index.getLeafCell(leafId))).append("'");
+            missing++;
+        }
+        if (missing > 0)
+            throw new IllegalArgumentException(missing + " leaf cells have no value (" + names + (missing > 10 ? ", ..." : "")
+                    + "), only a sparse lattice (Session.sparse) can summarize them");
+    }
+
+    public LatticeIndex getIndex() {
+        return index;
+    }
+
+    // value of a leaf cell, NaN if it is not populated
+    public double getValue(int cell) {
+        int leafId = index.getLeafId(cell);
+        if (leafIds == null)
+            return values[leafId];
+        int i = Arrays.binarySearch(leafIds, leafId);
+        return i < 0 ? Double.NaN : values[i];
+    }
+
+    // ids of the populated leaf cells in increasing order
+    public int[] getPopulatedCells() {
+        int[] cells = new int[values.length];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = index.getLeafCell(leafIds == null ? i : leafIds[i]);
+        return cells;
+    }
+
+    // values indexed by leaf id, NaN for the leaf cells that are not populated
+    double[] getValues() {
+        if (leafIds == null)
+            return values;
+        double[] dense = new double[index.getLeafCount()];
+        Arrays.fill(dense, Double.NaN);
+        for (int i = 0; i < leafIds.length; i++)
+            dense[leafIds[i]] = values[i];
+        return dense;
+    }
+
+    // hash of the hierarchies and of the leaf values, to recognize results computed on the same data
+    public long getFingerprint() {
+        return getFingerprint(Collections.emptySortedMap());
+    }
+
+    // same hash, with the values of some leaf cells (cell id as key) replaced, e.g. by TSLattice.update(). It is
+    // that of a dataset read from a values file with these values
+    public long getFingerprint(SortedMap<Integer, Double> newValues) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            out.writeInt(index.getDims());
+            for (int d = 0; d < index.getDims(); d++) {
+                out.writeInt(index.getRadix(d));
+                for (int i = 0; i < index.getRadix(d); i++) {
+                    TreeNode member = index.getMemberAt(d, i);
+                    out.writeInt(member.getParent() == null ? -1 : member.getParent().getIndex());
+                    out.writeUTF(member.getName());
+                }
+            }
+            // the (leaf id, value) pairs of the populated leaf cells in leaf id order, merged with the new values
+            Iterator<Map.Entry<Integer, Double>> changes = newValues.entrySet().iterator();
+            Map.Entry<Integer, Double> change = changes.hasNext() ? changes.next() : null;
+            int i = 0;
+            while (i < values.length || change != null) {
+                int leafId = i < values.length ? (leafIds == null ? i : leafIds[i]) : Integer.MAX_VALUE;
+                int changedId = change == null ? Integer.MAX_VALUE : index.getLeafId(change.getKey());
+                if (changedId <= leafId) {
+                    out.writeInt(changedId);
+                    out.writeLong(Double.doubleToLongBits(change.getValue()));
+                    change = changes.hasNext() ? changes.next() : null;
+                    if (changedId == leafId)
+                        i++;
+                } else {
+                    out.writeInt(leafId);
+                    out.writeLong(Double.doubleToLongBits(values[i++]));
+                }
+            }
+            out.flush();
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // neither happens for an in-memory stream and SHA-256
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package genericStructures;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+/* Reads a hierarchy file, one "parent;child" edge per line, into a tree of TreeNodes.
+ * Members are looked up by name in a hash index, so the file is read in a single pass in time
+ * linear in the number of edges. The parent of the first edge is the root of the hierarchy.
+ * An edge whose parent has not been seen yet is kept aside and attached as soon as its parent
+ * appears later in the file. Problems are reported on System.err instead of being dropped silently:
+ *   - duplicate edges: a child that already is a member of the hierarchy (member names must be unique,
+ *     since lattice cells are named after them). Repeated identical lines are only counted
+ *   - orphan edges: a parent that never becomes a member of the hierarchy
+ */
+
+public class HierarchyReader {
+    private String filename;
+    private TreeNode root;
+    private Map<String, TreeNode> members = new HashMap<>(); // member name as key
+    private Map<String, List<String>> pending = new HashMap<>(); // children of parents that have not been seen yet
+    private Map<String, Integer> pendingLines = new HashMap<>(); // line of the first pending edge of each parent
+    private Set<String> parsedLines = new HashSet<>();
+    private int repeatedLines = 0;
+
+    private HierarchyReader(String filename) {
+        this.filename = filename;
+    }
+
+    public static TreeNode read(String filename) throws IOException {
+        HierarchyReader reader = new HierarchyReader(filename);
+        reader.readEdges();
+        return reader.root;
+    }
+
+    private void readEdges() throws IOException {
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(filename), 1 << 16)) {
+            String line;
+            int lineNum = 0;
+            while ((line = bufferedReader.readLine()) != null) {
+                lineNum++;
+                if (line.isEmpty())
+                    continue;
+                if (!parsedLines.add(line)) { // some lines may repeat. do not add those nodes
+                    repeatedLines++;
+                    continue;
+                }
+                String[] splitArray = line.split(";");
+                if (splitArray.length != 2) {
+                    throw new IOException("Line " + lineNum + " '" + line + "' of '" + filename + "' was not parsed correctly!");
+                }
+                if (root == null) {
+                    root = new TreeNode(null, splitArray[0]);
+                    members.put(root.getName(), root);
+                }
+                addEdge(splitArray[0], splitArray[1], lineNum);
+            }
+        }
+        parsedLines = null;
+
+        if (repeatedLines > 0)
+            System.err.println(filename + ": " + repeatedLines + " repeated lines were ignored");
+        for (Map.Entry<String, List<String>> orphans : pending.entrySet())
+            System.err.println(filename + ", line " + pendingLines.get(orphans.getKey()) + ": parent '" + orphans.getKey()
+                    + "' is not a member of the hierarchy, orphan edges to " + orphans.getValue() + " were ignored");
+    }
+
+    private void addEdge(String parentName, String childName, int lineNum) {
+        TreeNode parent = members.get(parentName);
+        if (parent == null) {
+            pending.computeIfAbsent(parentName, k -> new ArrayList<>()).add(childName);
+            pendingLines.putIfAbsent(parentName, lineNum);
+            return;
+        }
+
+        // attaching a child may resolve pending edges to it, and so on down the tree
+        Deque<TreeNode> added = new ArrayDeque<>();
+        if (addChild(parent, childName, lineNum))
+            added.push(members.get(childName));
+        while (!added.isEmpty()) {
+            TreeNode node = added.pop();
+            List<String> children = pending.remove(node.getName());
+            if (children == null)
+                continue;
+            int line = pendingLines.remove(node.getName());
+            for (String name : children)
+                if (addChild(node, name, line))
+                    added.push(members.get(name));
+        }
+    }
+
+    private boolean addChild(TreeNode parent, String childName, int lineNum) {
+        TreeNode existing = members.get(childName);
+        if (existing != null) {
+            System.err.println(filename + ", line " + lineNum + ": duplicate edge '" + parent.getName() + ";" + childName
+                    + "' ignored, '" + childName + "' is already a member"
+                    + (existing.getParent() == null ? " (the root)" : " under '" + existing.getParent().getName() + "'"));
+            return false;
+        }
+        TreeNode child = new TreeNode(parent, childName);
+        parent.addChild(child);
+        members.put(childName, child);
+        return true;
+    }
+}
@@ -1,16 +1,14 @@
 package genericStructures;
 
-import cascadingAnalysts.CALattice;
 import exhaustiveTrees.ExhaustiveTreesNode;
-import main.Main;
 import treeSummary.TSLatticeNode;
 import cascadingAnalysts.CALatticeNode;
 import overlappingRectangles.ORLatticeNode;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
 
 // Lattice is a product of tree hierarchies
 // Because lattice construction is pretty much the same for all approaches, it's a single class that is extended by particular problem instances.
@@ -18,202 +16,196 @@ import java.util.*;
 
 public class Lattice {
     protected LatticeNode root;
-    protected Map<String, LatticeNode> map; // name of node as key, node as value
-    public static int dims;
+    protected LatticeNode[] nodes; // cell id (slot if the lattice is sparse) as index, node as value
+    protected LatticeIndex index;
+    protected LatticeTopology adjacency; // parent/child links of all nodes
+    private SparseLatticeAdjacency sparseAdjacency; // links and slots of the existing cells if the lattice is sparse
+    protected int dims;
     private SummaryType type;
+    protected Session session; // dataset and construction options
+    protected Dataset dataset; // hierarchies and leaf values
 
-    public Lattice(String[] files) {
-        dims = files.length;
-        map = new HashMap<>();
+    public Lattice(Session session) {
+        this.session = session;
+        dataset = session.getDataset();
+        dims = dataset.getIndex().getDims();
     }
 
-    public Map<Integer, TreeNode> createLattice(String[] files, SummaryType type) {
+    public void createLattice(SummaryType type) {
         this.type = type;
-        Map<Integer, TreeNode> trees = new HashMap<>(); // dimension # as key, treenode as value
+        index = dataset.getIndex();
+        if (session.sparse) {
+            sparseAdjacency = new SparseLatticeAdjacency(dataset, session.offHeapAdjacency);
+            adjacency = sparseAdjacency;
+        } else {
+            dataset.checkAllValues(); // all cells are created, a leaf without a value would be reconstructed as NaN
+            if (session.getSnapshot() != null)
+                adjacency = session.getSnapshot().getAdjacency();
+            else adjacency = new LatticeAdjacency(index, session.offHeapAdjacency, session.parallelConstruction);
+        }
+        buildLattice();
+    }
 
-        for (int i = 0; i < files.length; i++) {
-            TreeNode tree = readStructure(files[i]);
-            trees.put(i, tree);
+    private void buildLattice() {
+        if (sparseAdjacency != null) {
+            int[] cells = sparseAdjacency.getCells();
+            nodes = new LatticeNode[cells.length];
+            if (session.parallelConstruction) // nodes of a sparse lattice are independent of each other, any split will do
+                IntStream.range(0, cells.length).parallel().forEach(slot -> buildNode(cells[slot]));
+            else buildNodes();
+        } else {
+            nodes = new LatticeNode[index.size()];
+            if (session.parallelConstruction)
+                ForkJoinPool.commonPool().invoke(new BuildTask(getSplitDimension(), index.getTree(getSplitDimension())));
+            else buildNodes();
         }
-        switch (type) {
-            case TreeSummary:
-                root = new TSLatticeNode(getNodeName(trees));
-                break;
-            case CascadingAnalysts:
-                root = new CALatticeNode(getNodeName(trees));
-                break;
-            case CascadingAnalystsLevelByLevel:
-                root = new CALatticeNode(getNodeName(trees));
-                CALattice.levelMap.put(0, new ArrayList<>());
-                CALattice.levelMap.get(0).add((CALatticeNode) root);
-                break;
-            case OverlappingRectangles:
-                root = new ORLatticeNode(getNodeName(trees));
-                break;
-            case ExhaustiveTrees:
-                root = new ExhaustiveTreesNode(getNodeName(trees));
-                break;
-            default:
-                root = new LatticeNode(getNodeName(trees));
+        root = nodes[0]; // the root has the smallest id of all cells
+    }
+
+    // an implicit lattice has no nodes at all: links are computed from the cell coordinates by the index,
+    // and the algorithms keep their per-cell state in arrays indexed by cell id. It is never sparse
+    public void createImplicitLattice() {
+        this.type = SummaryType.Other;
+        dataset.checkAllValues();
+        index = dataset.getIndex();
+        adjacency = index;
+    }
+
+    // creates all cells of the lattice in id order, i.e. the cross-product of the hierarchies is enumerated
+    // with the last dimension varying the fastest. A cell is fully determined by its id, so unlike a
+    // recursive descent from the root this needs neither a stack nor a copy of the current coordinates.
+    private void buildNodes() {
+        for (int slot = 0; slot < nodes.length; slot++) {
+            buildNode(sparseAdjacency != null ? sparseAdjacency.getCells()[slot] : slot);
         }
+    }
 
-        map.put(root.name, root);
-        if (type.equals(SummaryType.CascadingAnalystsLevelByLevel))
-            createLatticeHelperCASpaceEfficient(root, trees, 1);
-        else createLatticeHelper(root, trees);
-        return trees;
-    }
-
-    private void createLatticeHelperCASpaceEfficient(LatticeNode latticeNode, Map<Integer, TreeNode> trees, int level) {
-        for (Integer curTreeKey : trees.keySet()) {
-            for (TreeNode curChild : trees.get(curTreeKey).getChildren()) {
-                String name = getNodeName(trees, curChild, curTreeKey);
-                if (!map.containsKey(name)) {
-                    CALatticeNode newNode = new CALatticeNode(name);
-                    map.put(name, newNode);
-
-                    if (!CALattice.levelMap.containsKey(level))
-                        CALattice.levelMap.put(level, new ArrayList<>());
-                    CALattice.levelMap.get(level).add(newNode);
-
-                    Map<Integer, TreeNode> temp = copyMap(trees);
-                    temp.put(curTreeKey, curChild);
-                    createLatticeHelperCASpaceEfficient(newNode, temp, level + 1);
-                }
-                latticeNode.addChild(map.get(name), curTreeKey);
-                map.get(name).setParent(latticeNode, curTreeKey);
-            }
+    private void buildNode(int cell) {
+        LatticeNode node = newNode(cell);
+        nodes[getSlot(cell)] = node;
 
-            if (!hasChildren(trees.values())) { // if the node is a leaf
-                latticeNode.setValue(Main.valMap.get(latticeNode.name));
-            } else {
-                latticeNode.setValue(Double.NaN);
-            }
+        if (index.isLeaf(cell)) {
+            node.setValue(getLeafValue(cell));
+        } else if (type.equals(SummaryType.CascadingAnalysts) || type.equals(SummaryType.CascadingAnalystsLevelByLevel))
+            node.setValue(Double.NaN);
+    }
+
+    // the parallel construction splits the lattice along the largest hierarchy
+    private int getSplitDimension() {
+        int splitDim = 0;
+        for (int d = 1; d < dims; d++) {
+            if (index.getRadix(d) > index.getRadix(splitDim))
+                splitDim = d;
         }
+        return splitDim;
     }
 
-    private void createLatticeHelper(LatticeNode latticeNode, Map<Integer, TreeNode> trees) {
-        for (Integer curTreeKey : trees.keySet()) {
-            for (TreeNode curChild : trees.get(curTreeKey).getChildren()) {
-                String name = getNodeName(trees, curChild, curTreeKey);
-                if (!map.containsKey(name)) {
-                    LatticeNode newNode;
-                    switch (type) {
-                        case TreeSummary:
-                            newNode = new TSLatticeNode(name);
-                            break;
-                        case CascadingAnalysts:
-                            newNode = new CALatticeNode(name);
-                            break;
-                        case OverlappingRectangles:
-                            newNode = new ORLatticeNode(name);
-                            break;
-                        case ExhaustiveTrees:
-                            newNode = new ExhaustiveTreesNode(name);
-                            break;
-                        default:
-                            newNode = new LatticeNode(name);
-                    }
-                    map.put(name, newNode);
-                    Map<Integer, TreeNode> temp = copyMap(trees);
-                    temp.put(curTreeKey, curChild);
-                    createLatticeHelper(newNode, temp);
-                }
-                latticeNode.addChild(map.get(name), curTreeKey);
-                map.get(name).setParent(latticeNode, curTreeKey);
+    // Builds the sub-lattice of the cells whose coordinate in the split dimension lies in the subtree of the
+    // member. The task creates the cells at the member itself and forks one task per child of the member,
+    // starting with the children of the hierarchy root. The subtrees of the children are disjoint, and the cells
+    // they share as ancestors (those at the member) are created by this task only, so every cell is created
+    // exactly once and written to its own slot of the nodes array, without any locking.
+    @SuppressWarnings("serial") // fork-join tasks are never serialized
+    private class BuildTask extends RecursiveAction {
+        private int dim;
+        private TreeNode member;
+
+        BuildTask(int dim, TreeNode member) {
+            this.dim = dim;
+            this.member = member;
+        }
+
+        @Override
+        protected void compute() {
+            List<BuildTask> subtasks = new ArrayList<>();
+            for (TreeNode child : member.getChildren())
+                subtasks.add(new BuildTask(dim, child));
+            for (BuildTask task : subtasks)
+                task.fork();
+
+            int stride = index.getStride(dim);
+            int blockSize = stride * index.getRadix(dim); // cells sharing the coordinates of all dimensions before dim
+            for (int block = 0; block < nodes.length; block += blockSize) {
+                int start = block + member.getIndex() * stride;
+                for (int cell = start; cell < start + stride; cell++)
+                    buildNode(cell);
             }
 
-            if (!hasChildren(trees.values())) { // if the node is a leaf
-                latticeNode.setValue(Main.valMap.get(latticeNode.name));
-            } else if (type.equals(SummaryType.CascadingAnalysts))
-                latticeNode.setValue(Double.NaN);
+            for (BuildTask task : subtasks)
+                task.join();
         }
     }
 
-    private TreeNode readStructure(String filename) {
-        Set<String> parsedLines = new HashSet<>(); // some lines may repeat. do not add those nodes
-        TreeNode tree = null;
-        try {
-            File file = new File(filename);
-            FileReader fileReader = new FileReader(file);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (!parsedLines.contains(line) && !line.isEmpty()) {
-                    parsedLines.add(line);
-                    String[] splitArray = line.split(";");
-                    if (splitArray.length != 2) {
-                        throw new Exception("Line '" + line + "' was not parsed correctly!");
-                    }
-                    if (tree == null) {
-                        tree = new TreeNode(null, splitArray[0]);
-                    }
-                    TreeNode parent = tree.findNode(splitArray[0]);
-                    if (parent != null) {
-                        TreeNode child = new TreeNode(parent, splitArray[1]);
-                        parent.addChild(child);
-                    }
-                }
-            }
-            fileReader.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+    private LatticeNode newNode(int cell) {
+        switch (type) {
+            case TreeSummary:
+                return new TSLatticeNode(this, cell);
+            case CascadingAnalysts:
+            case CascadingAnalystsLevelByLevel:
+                return new CALatticeNode(this, cell);
+            case OverlappingRectangles:
+                return new ORLatticeNode(this, cell);
+            case ExhaustiveTrees:
+                return new ExhaustiveTreesNode(this, cell);
+            default:
+                return new LatticeNode(this, cell);
         }
-        return tree;
     }
 
     public LatticeNode getRoot() {
         return root;
     }
 
-    public Map<String, LatticeNode> getMap() {
-        return map;
+    // node of the cell, null if the lattice is sparse and the cell does not exist
+    public LatticeNode getNode(int cell) {
+        int slot = getSlot(cell);
+        return slot < 0 ? null : nodes[slot];
     }
 
-    private String getNodeName(Map<Integer, TreeNode> trees) {
-        String name = "";
-        for (int d = 0; d < dims - 1; d++)
-            name += trees.get(d).getName() + ",";
-        name += trees.get(dims - 1).getName();
-        return name;
+    // position of the node of the cell in the nodes array: the cell id itself, unless the lattice is sparse.
+    // Returns -1 if the cell does not exist
+    public int getSlot(int cell) {
+        return sparseAdjacency != null ? sparseAdjacency.getSlot(cell) : cell;
     }
 
-    private String getNodeName(Map<Integer, TreeNode> trees, TreeNode child, int dim) {
-        String name = "";
-        for (int d = 0; d < dims - 1; d++) {
-            if (d != dim)
-                name += trees.get(d).getName() + ",";
-            else name += child.getName() + ",";
-        }
-        if (dims - 1 != dim)
-            name += trees.get(dims - 1).getName();
-        else name += child.getName();
-        return name;
+    // raw value of a leaf cell, as read from the values file
+    public double getLeafValue(int cell) {
+        return dataset.getValue(cell);
     }
 
-    private Map<Integer, TreeNode> copyMap(Map<Integer, TreeNode> map) {
-        Map<Integer, TreeNode> copy = new HashMap<>();
-        for (int key : map.keySet()) {
-            copy.put(key, map.get(key));
-        }
-        return copy;
+    public double getValue(int cell) {
+        return getNode(cell).getValue();
+    }
+
+    public LatticeIndex getIndex() {
+        return index;
+    }
+
+    public int getDims() {
+        return dims;
     }
 
-    private boolean hasChildren(Collection<TreeNode> trees) {
-        for (TreeNode t : trees)
-            if (!t.getChildren().isEmpty())
-                return true;
-        return false;
+    public Dataset getDataset() {
+        return dataset;
     }
 
     public int getLatticeSize() {
-        return map.size();
+        if (nodes == null) // implicit lattice
+            return index.size();
+        int count = 0;
+        for (LatticeNode n : nodes) {
+            if (n != null)
+                count++;
+        }
+        return count;
     }
 
     public int getLatticeLeavesNum() {
+        if (nodes == null) // implicit lattice
+            return index.getLeafCount();
         int count = 0;
-        for (LatticeNode n : map.values()) {
-            if (n.isLeaf)
+        for (LatticeNode n : nodes) {
+            if (n != null && n.isLeaf)
                 count++;
         }
         return count;
@@ -0,0 +1,115 @@
+package genericStructures;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.stream.IntStream;
+
+/* Parent/child links of all lattice cells, kept in flat int buffers instead of per-node lists.
+ * Children are stored per dimension in compressed-sparse-row form: the children of cell c in
+ * dimension d are childIds[d][childOffsets[d][c] .. childOffsets[d][c + 1]), in hierarchy order.
+ * Every cell has at most one parent per dimension, so parents are a dense (cell, dim) table
+ * with -1 for "no parent".
+ * The buffers are either on the Java heap or allocated off-heap (direct buffers), in which case
+ * the lattice topology does not count towards the heap at all.
+ */
+
+public class LatticeAdjacency implements LatticeTopology {
+    private int dims;
+    private IntBuffer[] childOffsets;
+    private IntBuffer[] childIds;
+    private IntBuffer parents;
+
+    public LatticeAdjacency(LatticeIndex index, boolean offHeap, boolean parallel) {
+        dims = index.getDims();
+        int size = index.size();
+        childOffsets = new IntBuffer[dims];
+        childIds = new IntBuffer[dims];
+        int parentCount = getParentCount(size, dims);
+        parents = allocate(parentCount, offHeap);
+        for (int i = 0; i < parentCount; i++)
+            parents.put(i, -1);
+
+        // dimensions write to disjoint buffers and parent entries, so they can be filled concurrently
+        IntStream dimensions = IntStream.range(0, dims);
+        if (parallel)
+            dimensions = dimensions.parallel();
+        dimensions.forEach(d -> fillDimension(index, d, offHeap));
+    }
+
+    // adjacency over existing buffers, e.g. mapped from a LatticeSnapshot
+    LatticeAdjacency(int dims, IntBuffer[] childOffsets, IntBuffer[] childIds, IntBuffer parents) {
+        this.dims = dims;
+        this.childOffsets = childOffsets;
+        this.childIds = childIds;
+        this.parents = parents;
+    }
+
+    private void fillDimension(LatticeIndex index, int d, boolean offHeap) {
+        int size = index.size();
+        // every cell that is not at the root of dimension d is a child of exactly one cell in d
+        childOffsets[d] = allocate(size + 1, offHeap);
+        childIds[d] = allocate(size - size / index.getRadix(d), offHeap);
+
+        int pos = 0;
+        for (int cell = 0; cell < size; cell++) {
+            childOffsets[d].put(cell, pos);
+            for (TreeNode child : index.getMember(cell, d).getChildren()) {
+                int childCell = index.replaceCoordinate(cell, d, child.getIndex());
+                childIds[d].put(pos++, childCell);
+                parents.put(childCell * dims + d, cell);
+            }
+        }
+        childOffsets[d].put(size, pos);
+    }
+
+    // number of entries of the parent table, one per (cell, dimension) pair. Cells and dimensions are then
+    // safely multiplied into a table position, as every position is smaller
+    static int getParentCount(int size, int dims) {
+        try {
+            return Math.multiplyExact(size, dims);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The lattice has more parent links than can be indexed by an int");
+        }
+    }
+
+    static IntBuffer allocate(int capacity, boolean offHeap) {
+        if (offHeap) {
+            int bytes;
+            try {
+                bytes = Math.multiplyExact(capacity, Integer.BYTES);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("A buffer of " + capacity + " ints is larger than a direct buffer can be");
+            }
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.allocate(capacity);
+    }
+
+    @Override
+    public int getChildCount(int cell, int dim) {
+        return childOffsets[dim].get(cell + 1) - childOffsets[dim].get(cell);
+    }
+
+    @Override
+    public int getChild(int cell, int dim, int i) {
+        return childIds[dim].get(childOffsets[dim].get(cell) + i);
+    }
+
+    @Override
+    public int getParent(int cell, int dim) {
+        return parents.get(cell * dims + dim);
+    }
+
+    IntBuffer getChildOffsets(int dim) {
+        return childOffsets[dim];
+    }
+
+    IntBuffer getChildIds(int dim) {
+        return childIds[dim];
+    }
+
+    IntBuffer getParents() {
+        return parents;
+    }
+}
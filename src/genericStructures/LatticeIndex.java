@@ -0,0 +1,246 @@
+package genericStructures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Integer coding of lattice cells. Every member of a hierarchy gets a coordinate (its pre-order
+ * position in the hierarchy), and a cell is identified by the mixed-radix number formed by its
+ * coordinates in all dimensions: id = sum of coordinate[d] * stride[d].
+ * Since a lattice is the full cross-product of the hierarchies, the ids are dense in [0, size),
+ * so cells can be stored in plain arrays. The root of the lattice always has id 0.
+ * Cell names (e.g. "Northeast,Male,All ages") are only produced on demand for output.
+ * The index is also an implicit lattice topology: children and parents of a cell are derived from the
+ * children and parents of its coordinates, without storing any links.
+ */
+
+public class LatticeIndex implements LatticeTopology {
+    private TreeNode[] trees; // roots of the hierarchies, one per dimension
+    private TreeNode[][] members; // members of each hierarchy, indexed by coordinate
+    private int[][] depths; // depth of each member in its hierarchy, indexed by coordinate
+    private int[] strides;
+    private int size;
+    private int[][] leafCoordinates; // position of each member among the leaves of its hierarchy, -1 for intermediate members
+    private int[][] leafMembers; // coordinate of each leaf of a hierarchy, indexed by leaf position
+    private int[] leafStrides;
+    private List<Map<String, Integer>> coordinates; // member name as key, coordinate as value (one map per dimension)
+
+    public LatticeIndex(TreeNode[] trees) {
+        this.trees = trees;
+        members = new TreeNode[trees.length][];
+        depths = new int[trees.length][];
+        strides = new int[trees.length];
+        leafCoordinates = new int[trees.length][];
+        leafMembers = new int[trees.length][];
+        leafStrides = new int[trees.length];
+        coordinates = new ArrayList<>();
+
+        for (int d = 0; d < trees.length; d++) {
+            List<TreeNode> list = new ArrayList<>();
+            numberMembers(trees[d], list);
+            members[d] = list.toArray(new TreeNode[0]);
+            depths[d] = new int[members[d].length];
+            for (int i = 1; i < members[d].length; i++)
+                depths[d][i] = depths[d][members[d][i].getParent().getIndex()] + 1; // parents precede children in pre-order
+            leafCoordinates[d] = new int[members[d].length];
+            leafMembers[d] = new int[trees[d].totalLeaves()];
+            int leaves = 0;
+            for (int i = 0; i < members[d].length; i++) {
+                leafCoordinates[d][i] = members[d][i].getChildren().isEmpty() ? leaves : -1;
+                if (leafCoordinates[d][i] >= 0)
+                    leafMembers[d][leaves++] = i;
+            }
+            Map<String, Integer> names = new HashMap<>();
+            for (TreeNode member : members[d])
+                names.putIfAbsent(member.getName(), member.getIndex());
+            coordinates.add(names);
+        }
+
+        // the last dimension varies the fastest
+        size = 1;
+        try {
+            for (int d = trees.length - 1; d >= 0; d--) {
+                strides[d] = size;
+                size = Math.multiplyExact(size, members[d].length);
+            }
+            int leafCount = 1;
+            for (int d = trees.length - 1; d >= 0; d--) {
+                leafStrides[d] = leafCount;
+                leafCount *= trees[d].totalLeaves();
+            }
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The lattice has more cells than can be indexed by an int");
+        }
+    }
+
+    private void numberMembers(TreeNode node, List<TreeNode> list) {
+        node.setIndex(list.size());
+        list.add(node);
+        for (TreeNode child : node.getChildren())
+            numberMembers(child, list);
+    }
+
+    public int getDims() {
+        return trees.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TreeNode getTree(int dim) {
+        return trees[dim];
+    }
+
+    // number of members in the hierarchy of the dimension
+    public int getRadix(int dim) {
+        return members[dim].length;
+    }
+
+    public int getStride(int dim) {
+        return strides[dim];
+    }
+
+    public int getCoordinate(int cell, int dim) {
+        return (cell / strides[dim]) % members[dim].length;
+    }
+
+    public TreeNode getMember(int cell, int dim) {
+        return members[dim][getCoordinate(cell, dim)];
+    }
+
+    public TreeNode getMemberAt(int dim, int coordinate) {
+        return members[dim][coordinate];
+    }
+
+    // id of the cell that equals the given cell in all dimensions but dim, where it has the given coordinate
+    public int replaceCoordinate(int cell, int dim, int coordinate) {
+        return cell + (coordinate - getCoordinate(cell, dim)) * strides[dim];
+    }
+
+    public int getCell(int... coordinates) {
+        int cell = 0;
+        for (int d = 0; d < coordinates.length; d++)
+            cell += coordinates[d] * strides[d];
+        return cell;
+    }
+
+    @Override
+    public int getChildCount(int cell, int dim) {
+        return getMember(cell, dim).getChildren().size();
+    }
+
+    @Override
+    public int getChild(int cell, int dim, int i) {
+        return replaceCoordinate(cell, dim, getMember(cell, dim).getChildren().get(i).getIndex());
+    }
+
+    @Override
+    public int getParent(int cell, int dim) {
+        TreeNode parent = getMember(cell, dim).getParent();
+        return parent == null ? -1 : replaceCoordinate(cell, dim, parent.getIndex());
+    }
+
+    // a cell is a leaf if all of its coordinates are leaves of their hierarchies
+    public boolean isLeaf(int cell) {
+        for (int d = 0; d < trees.length; d++)
+            if (!getMember(cell, d).getChildren().isEmpty())
+                return false;
+        return true;
+    }
+
+    // level of the cell in the lattice, i.e. its distance from the root (the sum of the depths of its coordinates)
+    public int getLevel(int cell) {
+        int level = 0;
+        for (int d = 0; d < trees.length; d++)
+            level += depths[d][getCoordinate(cell, d)];
+        return level;
+    }
+
+    public int getMaxLevel() {
+        int level = 0;
+        for (int d = 0; d < trees.length; d++) {
+            int maxDepth = 0;
+            for (int depth : depths[d])
+                maxDepth = Math.max(maxDepth, depth);
+            level += maxDepth;
+        }
+        return level;
+    }
+
+    // ids of all cells ordered by level (and by id within a level). levelStarts must have getMaxLevel() + 2
+    // entries and receives the position of the first cell of every level, followed by the total size
+    public int[] getCellsByLevel(int[] levelStarts) {
+        int[] cells = new int[size];
+        for (int cell = 0; cell < size; cell++)
+            levelStarts[getLevel(cell) + 1]++;
+        for (int l = 1; l < levelStarts.length; l++)
+            levelStarts[l] += levelStarts[l - 1];
+        int[] next = levelStarts.clone();
+        for (int cell = 0; cell < size; cell++)
+            cells[next[getLevel(cell)]++] = cell;
+        return cells;
+    }
+
+    // number of leaf cells, i.e. the product of the numbers of leaves of all hierarchies
+    public int getLeafCount() {
+        int count = 1;
+        for (TreeNode tree : trees)
+            count *= tree.totalLeaves();
+        return count;
+    }
+
+    // leaves are numbered by the same mixed-radix scheme as the cells, over the leaves of each hierarchy only,
+    // so the leaf ids are dense in [0, getLeafCount()). Returns -1 if the cell is not a leaf
+    public int getLeafId(int cell) {
+        int leafId = 0;
+        for (int d = 0; d < trees.length; d++) {
+            int leafCoordinate = leafCoordinates[d][getCoordinate(cell, d)];
+            if (leafCoordinate < 0)
+                return -1;
+            leafId += leafCoordinate * leafStrides[d];
+        }
+        return leafId;
+    }
+
+    // id of the leaf cell with the given leaf id
+    public int getLeafCell(int leafId) {
+        int cell = 0;
+        for (int d = 0; d < trees.length; d++)
+            cell += leafMembers[d][(leafId / leafStrides[d]) % leafMembers[d].length] * strides[d];
+        return cell;
+    }
+
+    public String getName(int cell) {
+        StringBuilder name = new StringBuilder();
+        for (int d = 0; d < trees.length; d++) {
+            if (d > 0)
+                name.append(',');
+            name.append(getMember(cell, d).getName());
+        }
+        return name.toString();
+    }
+
+    // returns the id of the cell with the given name, or -1 if there is no such cell.
+    // member names may contain commas themselves, so every split position is tried
+    public int getCell(String name) {
+        return getCell(name, 0, 0, 0);
+    }
+
+    private int getCell(String name, int from, int dim, int cell) {
+        if (dim == trees.length - 1) {
+            Integer coordinate = coordinates.get(dim).get(name.substring(from));
+            return coordinate == null ? -1 : cell + coordinate * strides[dim];
+        }
+        for (int i = name.indexOf(',', from); i >= 0; i = name.indexOf(',', i + 1)) {
+            Integer coordinate = coordinates.get(dim).get(name.substring(from, i));
+            if (coordinate != null) {
+                int found = getCell(name, i + 1, dim + 1, cell + coordinate * strides[dim]);
+                if (found >= 0)
+                    return found;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,28 +1,16 @@
 package genericStructures;
 
-import java.util.ArrayList;
-import java.util.List;
-
+// parent/child links are not stored in the nodes themselves, they live in the LatticeAdjacency of the lattice
 public class LatticeNode {
     public boolean isLeaf;
     public double value;
-    public List<LatticeNode> parents; // list of parents in all dimensions
-    public List<List<LatticeNode>> children; // lists of children in all dimensions
-    public String name;
+    public int id; // mixed-radix id of the cell, see LatticeIndex
+    protected Lattice lattice;
 
-    public LatticeNode(String name) {
+    public LatticeNode(Lattice lattice, int id) {
         this.isLeaf = false;
-        this.name = name;
-        parents = new ArrayList<>();
-        children = new ArrayList<>();
-        for (int i = 0; i < Lattice.dims; i++) {
-            parents.add(null);
-            children.add(new ArrayList<>());
-        }
-    }
-
-    void addChild(LatticeNode child, int dim) {
-        children.get(dim).add(child);
+        this.lattice = lattice;
+        this.id = id;
     }
 
     public void setValue(double value) {
@@ -34,8 +22,24 @@ public class LatticeNode {
         return value;
     }
 
-    public void setParent(LatticeNode parent, int dim) {
-        parents.add(dim, parent);
+    public int getChildCount(int dim) {
+        return lattice.adjacency.getChildCount(id, dim);
+    }
+
+    // i-th child of the node in the given dimension
+    public LatticeNode getChild(int dim, int i) {
+        return lattice.getNode(lattice.adjacency.getChild(id, dim, i));
+    }
+
+    // parent of the node in the given dimension, null if the node is at the root of that dimension
+    public LatticeNode getParent(int dim) {
+        int parent = lattice.adjacency.getParent(id, dim);
+        return parent < 0 ? null : lattice.getNode(parent);
+    }
+
+    // names are not stored in the nodes, they are produced from the cell coordinates when needed
+    public String getName() {
+        return lattice.getIndex().getName(id);
     }
 
     @Override
@@ -44,20 +48,20 @@ public class LatticeNode {
             return false;
         else {
             LatticeNode n = (LatticeNode) o;
-            return name.equals(n.name);
+            return id == n.id && lattice == n.lattice;
         }
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return id;
     }
 
     public void print() {
-        System.out.println(name);
-        for (List<LatticeNode> l : children) {
-            for (LatticeNode child : l) {
-                child.print(1);
+        System.out.println(getName());
+        for (int dim = 0; dim < lattice.dims; dim++) {
+            for (int i = 0; i < getChildCount(dim); i++) {
+                getChild(dim, i).print(1);
             }
         }
     }
@@ -66,29 +70,29 @@ public class LatticeNode {
         for (int i = 0; i < spaces; i++)
             System.out.print("  ");
         if (!isLeaf)
-            System.out.print(name);
-        else System.out.println(name + ": " + value);
+            System.out.print(getName());
+        else System.out.println(getName() + ": " + value);
         System.out.println();
-        for (List<LatticeNode> l : children) {
-            for (LatticeNode child : l) {
-                child.print(spaces + 1);
+        for (int dim = 0; dim < lattice.dims; dim++) {
+            for (int i = 0; i < getChildCount(dim); i++) {
+                getChild(dim, i).print(spaces + 1);
             }
         }
     }
 
     public void printNodeInfo() {
-        System.out.println("Node: " + name);
-        for (int dim = 0; dim < Lattice.dims; dim++) {
-            if (parents.get(dim) == null)
+        System.out.println("Node: " + getName());
+        for (int dim = 0; dim < lattice.dims; dim++) {
+            if (getParent(dim) == null)
                 System.out.println("Parent in dim#" + (dim + 1) + ": null");
-            else System.out.println("Parent in dim#" + (dim + 1) + ": " + parents.get(dim).name);
+            else System.out.println("Parent in dim#" + (dim + 1) + ": " + getParent(dim).getName());
         }
 
-        for (int dim = 0; dim < Lattice.dims; dim++) {
-            if (!children.get(dim).isEmpty()) {
+        for (int dim = 0; dim < lattice.dims; dim++) {
+            if (hasChildren(dim)) {
                 System.out.print("Children in dim#" + (dim + 1) + ": ");
-                for (LatticeNode n : children.get(dim)) {
-                    System.out.print(n.name + " ");
+                for (int i = 0; i < getChildCount(dim); i++) {
+                    System.out.print(getChild(dim, i).getName() + " ");
                 }
                 System.out.println();
             }
@@ -106,10 +110,10 @@ public class LatticeNode {
             return 1;
         else {
             int num = 0;
-            for (int d = 0; d < Lattice.dims; d++) {
-                if (!children.get(d).isEmpty()) {
-                    for (LatticeNode child : children.get(d)) {
-                        num += child.getLeafDescendantNum();
+            for (int d = 0; d < lattice.dims; d++) {
+                if (hasChildren(d)) {
+                    for (int i = 0; i < getChildCount(d); i++) {
+                        num += getChild(d, i).getLeafDescendantNum();
                     }
                     break;
                 }
@@ -118,9 +122,13 @@ public class LatticeNode {
         }
     }
 
+    public boolean hasChildren(int dim) {
+        return getChildCount(dim) > 0;
+    }
+
     public boolean hasChildren() {
-        for (List list : children) {
-            if (!list.isEmpty())
+        for (int dim = 0; dim < lattice.dims; dim++) {
+            if (hasChildren(dim))
                 return true;
         }
         return false;
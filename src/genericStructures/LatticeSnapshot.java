@@ -0,0 +1,256 @@
+package genericStructures;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/* Binary snapshot of a built lattice: the hierarchies, the adjacency buffers and the raw leaf values.
+ * A snapshot is written once from a lattice and then reloaded by memory-mapping the file, so that
+ * a lattice can be created without parsing the hierarchy and values files and without building the
+ * adjacency again. The adjacency is used directly from the mapped file, the values are copied into
+ * the Dataset of the snapshot.
+ * A snapshot records the key of the files it was written from (see getSourceKey()), so that a snapshot that
+ * is older than its hierarchy or values files is not summarized in their place.
+ *
+ * Layout (native byte order):
+ *   int magic, int version, long source key (0 if unknown), int dims
+ *   per dimension: int member count, int[] parent coordinates (-1 for the root), then per member
+ *                  an int byte length followed by the UTF-8 name
+ *   padding to a multiple of 8 bytes
+ *   int size (number of cells)
+ *   per dimension: int edge count, int[size + 1] child offsets, int[edge count] child ids
+ *   int[size * dims] parents
+ *   int leaf count, padding to a multiple of 8 bytes, double[leaf count] leaf values (indexed by leaf id)
+ */
+
+public class LatticeSnapshot {
+    private static final int MAGIC = 0x54534C53; // "TSLS"
+    private static final int VERSION = 3;
+
+    private LatticeIndex index;
+    private LatticeAdjacency adjacency;
+    private Dataset dataset;
+
+    // maps an existing snapshot file, whatever files it was written from
+    public LatticeSnapshot(String filename) throws IOException {
+        this(filename, 0);
+    }
+
+    // maps an existing snapshot file, which must have been written from the files of the given source key
+    // (any files if the key is 0)
+    public LatticeSnapshot(String filename, long sourceKey) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long pos = 0;
+            ByteBuffer header = map(channel, pos, channel.size() < Integer.MAX_VALUE ? channel.size() : Integer.MAX_VALUE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new IOException("'" + filename + "' is not a lattice snapshot");
+            if (header.getLong() != sourceKey && sourceKey != 0)
+                throw new IOException("'" + filename + "' is stale, its hierarchy or values files have changed since it was written");
+
+            TreeNode[] trees = readHierarchies(header);
+            int dims = trees.length;
+            int size = header.getInt();
+            pos = header.position();
+            index = new LatticeIndex(trees);
+
+            IntBuffer[] childOffsets = new IntBuffer[dims];
+            IntBuffer[] childIds = new IntBuffer[dims];
+            for (int d = 0; d < dims; d++) {
+                int edges = map(channel, pos, Integer.BYTES).getInt();
+                pos += Integer.BYTES;
+                childOffsets[d] = map(channel, pos, (size + 1L) * Integer.BYTES).asIntBuffer();
+                pos += (size + 1L) * Integer.BYTES;
+                childIds[d] = map(channel, pos, (long) edges * Integer.BYTES).asIntBuffer();
+                pos += (long) edges * Integer.BYTES;
+            }
+            IntBuffer parents = map(channel, pos, (long) size * dims * Integer.BYTES).asIntBuffer();
+            pos += (long) size * dims * Integer.BYTES;
+            adjacency = new LatticeAdjacency(dims, childOffsets, childIds, parents);
+            int leafCount = map(channel, pos, Integer.BYTES).getInt();
+            pos = align(pos + Integer.BYTES);
+            double[] values = new double[leafCount];
+            map(channel, pos, (long) leafCount * Double.BYTES).asDoubleBuffer().get(values);
+            dataset = new Dataset(index, values);
+        }
+    }
+
+    // Key of the files a dataset is read from: their paths, sizes and modification times, and whether the values
+    // are rounded. It changes whenever one of the files does, without reading them
+    public static long getSourceKey(String[] hierarchies, String valuesFile, boolean toRound) throws IOException {
+        long key = toRound ? 1 : 0;
+        for (String file : hierarchies)
+            key = 31 * key + getFileKey(file);
+        return 31 * key + getFileKey(valuesFile);
+    }
+
+    private static long getFileKey(String file) throws IOException {
+        Path path = Paths.get(file).toAbsolutePath();
+        long key = path.toString().hashCode();
+        key = 31 * key + Files.size(path);
+        return 31 * key + Files.getLastModifiedTime(path).toMillis();
+    }
+
+    // whether the file is a snapshot written from the files of the given source key
+    public static boolean isCurrent(String filename, long sourceKey) throws IOException {
+        if (!new File(filename).exists())
+            return false;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            if (channel.size() < 2 * Integer.BYTES + Long.BYTES)
+                return false;
+            ByteBuffer header = map(channel, 0, 2 * Integer.BYTES + Long.BYTES);
+            return header.getInt() == MAGIC && header.getInt() == VERSION && header.getLong() == sourceKey;
+        }
+    }
+
+    // reads the dims and the hierarchies from the buffer, which is left at the next multiple of 8 bytes
+    static TreeNode[] readHierarchies(ByteBuffer header) {
+        int dims = header.getInt();
+        TreeNode[] trees = new TreeNode[dims];
+        for (int d = 0; d < dims; d++) {
+            int memberNum = header.getInt();
+            int[] parents = new int[memberNum];
+            header.asIntBuffer().get(parents);
+            header.position(header.position() + memberNum * Integer.BYTES);
+            // members are stored in pre-order, so parents always come before their children
+            TreeNode[] members = new TreeNode[memberNum];
+            for (int i = 0; i < memberNum; i++) {
+                byte[] name = new byte[header.getInt()];
+                header.get(name);
+                TreeNode parent = parents[i] < 0 ? null : members[parents[i]];
+                members[i] = new TreeNode(parent, new String(name, StandardCharsets.UTF_8));
+                if (parent != null)
+                    parent.addChild(members[i]);
+            }
+            trees[d] = members[0];
+        }
+        header.position(align(header.position()));
+        return trees;
+    }
+
+    // writes the dims and the hierarchies of the index, followed by padding to a multiple of 8 bytes
+    static long writeHierarchies(FileChannel channel, ByteBuffer buffer, long pos, LatticeIndex index) throws IOException {
+        int dims = index.getDims();
+        pos = putInt(channel, buffer, pos, dims);
+        for (int d = 0; d < dims; d++) {
+            pos = putInt(channel, buffer, pos, index.getRadix(d));
+            for (int i = 0; i < index.getRadix(d); i++) {
+                TreeNode parent = index.getMemberAt(d, i).getParent();
+                pos = putInt(channel, buffer, pos, parent == null ? -1 : parent.getIndex());
+            }
+            for (int i = 0; i < index.getRadix(d); i++) {
+                byte[] name = index.getMemberAt(d, i).getName().getBytes(StandardCharsets.UTF_8);
+                pos = putInt(channel, buffer, pos, name.length);
+                for (byte b : name) {
+                    pos = flushIfFull(channel, buffer, pos, 1);
+                    buffer.put(b);
+                }
+            }
+        }
+        return pad(channel, buffer, pos);
+    }
+
+    // the mapping stays valid after the channel is closed
+    static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.nativeOrder());
+    }
+
+    static int align(int position) {
+        return (position + 7) & ~7;
+    }
+
+    static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    public static void write(Dataset dataset, String filename) throws IOException {
+        write(dataset, filename, 0);
+    }
+
+    // writes the snapshot of a dataset read from the files of the given source key, see getSourceKey()
+    public static void write(Dataset dataset, String filename, long sourceKey) throws IOException {
+        LatticeIndex index = dataset.getIndex();
+        LatticeAdjacency adjacency = new LatticeAdjacency(index, false, false);
+        int dims = index.getDims();
+        int size = index.size();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.nativeOrder());
+            long pos = 0;
+            pos = putInt(channel, buffer, pos, MAGIC);
+            pos = putInt(channel, buffer, pos, VERSION);
+            buffer.putLong(sourceKey);
+            pos = writeHierarchies(channel, buffer, pos, index);
+            pos = putInt(channel, buffer, pos, size);
+
+            for (int d = 0; d < dims; d++) {
+                IntBuffer offsets = adjacency.getChildOffsets(d);
+                pos = putInt(channel, buffer, pos, offsets.get(size));
+                for (int i = 0; i <= size; i++)
+                    pos = putInt(channel, buffer, pos, offsets.get(i));
+                IntBuffer childIds = adjacency.getChildIds(d);
+                for (int i = 0; i < offsets.get(size); i++)
+                    pos = putInt(channel, buffer, pos, childIds.get(i));
+            }
+            IntBuffer parents = adjacency.getParents();
+            int parentCount = LatticeAdjacency.getParentCount(size, dims);
+            for (int i = 0; i < parentCount; i++)
+                pos = putInt(channel, buffer, pos, parents.get(i));
+
+            double[] values = dataset.getValues();
+            pos = putInt(channel, buffer, pos, values.length);
+            pos = pad(channel, buffer, pos);
+            for (double value : values) {
+                pos = flushIfFull(channel, buffer, pos, Double.BYTES);
+                buffer.putDouble(value);
+            }
+            flushIfFull(channel, buffer, pos, buffer.capacity());
+        }
+    }
+
+    static long putInt(FileChannel channel, ByteBuffer buffer, long pos, int value) throws IOException {
+        pos = flushIfFull(channel, buffer, pos, Integer.BYTES);
+        buffer.putInt(value);
+        return pos;
+    }
+
+    // pads the file with zeros to a multiple of 8 bytes
+    static long pad(FileChannel channel, ByteBuffer buffer, long pos) throws IOException {
+        while (pos + buffer.position() != align(pos + buffer.position())) {
+            pos = flushIfFull(channel, buffer, pos, 1);
+            buffer.put((byte) 0);
+        }
+        return pos;
+    }
+
+    // writes the buffer out if there is no room for the given number of bytes, returns the file position of the buffer
+    static long flushIfFull(FileChannel channel, ByteBuffer buffer, long pos, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes)
+            return pos;
+        buffer.flip();
+        while (buffer.hasRemaining())
+            pos += channel.write(buffer);
+        buffer.clear();
+        return pos;
+    }
+
+    public LatticeIndex getIndex() {
+        return index;
+    }
+
+    public LatticeAdjacency getAdjacency() {
+        return adjacency;
+    }
+
+    public Dataset getDataset() {
+        return dataset;
+    }
+}
@@ -0,0 +1,13 @@
+package genericStructures;
+
+// parent/child links between lattice cells, addressed by cell id (see LatticeIndex).
+// LatticeAdjacency stores them explicitly, LatticeIndex computes them from the cell coordinates.
+public interface LatticeTopology {
+    int getChildCount(int cell, int dim);
+
+    // i-th child of the cell in the given dimension
+    int getChild(int cell, int dim, int i);
+
+    // parent of the cell in the given dimension, -1 if the cell is at the root of that dimension
+    int getParent(int cell, int dim);
+}
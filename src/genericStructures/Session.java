@@ -0,0 +1,39 @@
+package genericStructures;
+
+/* The context of a summarization run: the dataset to summarize (read from the hierarchy and values files, or
+ * from a snapshot) and the options of lattice construction. There is no global state: every lattice is created
+ * on a session and keeps the parameters and the state of its own run (alpha, budget, annotations, ...), so any
+ * number of lattices, over the same or different sessions, can be summarized concurrently, e.g. on a shared
+ * thread pool. A session is only read by the lattices, so it can be shared by all of them.
+ */
+
+public class Session {
+    private Dataset dataset;
+    private LatticeSnapshot snapshot; // null unless the dataset comes from a snapshot
+    public boolean offHeapAdjacency = false; // keep the adjacency buffers outside of the Java heap
+    public boolean parallelConstruction = false; // build lattices concurrently on the common ForkJoinPool
+    public boolean sparse = false; // create only the populated cells and the cells with a populated descendant
+    public boolean parallelSummarization = false; // summarize lattices on the common ForkJoinPool
+    // TreeSummary pruning: if positive, at most this many annotations are kept per cell (and alpha), which bounds
+    // the annotation memory and time. A cell with more first drops its dominated annotations. Cells within the cap
+    // are left as they are. See TSLattice.getDroppedAnnotations() for the loss of optimality
+    public int maxAnnotations = 0;
+
+    public Session(Dataset dataset) {
+        this.dataset = dataset;
+    }
+
+    // lattices of the session take their links from the snapshot (unless they are sparse)
+    public Session(LatticeSnapshot snapshot) {
+        this.dataset = snapshot.getDataset();
+        this.snapshot = snapshot;
+    }
+
+    public Dataset getDataset() {
+        return dataset;
+    }
+
+    public LatticeSnapshot getSnapshot() {
+        return snapshot;
+    }
+}
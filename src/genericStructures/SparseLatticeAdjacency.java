@@ -0,0 +1,126 @@
+package genericStructures;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/* Parent/child links of a sparse lattice, i.e. of the cells that are populated (leaf cells with a value)
+ * or that have a populated descendant. The other cells of the cross-product do not exist at all, so the
+ * memory and the construction time depend on the number of populated cells only, not on the product of
+ * the hierarchy sizes. The cells still have their ids in the whole cross-product though, so the product
+ * must fit in an int (see LatticeIndex).
+ * Existing cells keep their mixed-radix ids and are numbered by slot, their position in the sorted array
+ * of ids. Children are stored per dimension in compressed-sparse-row form over the slots, same as in
+ * LatticeAdjacency. A parent of an existing cell is one of its ancestors, so it always exists and is
+ * taken from the LatticeIndex.
+ */
+
+public class SparseLatticeAdjacency implements LatticeTopology {
+    private LatticeIndex index;
+    private int[] cells; // ids of the existing cells in increasing order, slot as index
+    private IntBuffer[] childOffsets;
+    private IntBuffer[] childIds;
+
+    public SparseLatticeAdjacency(Dataset dataset, boolean offHeap) {
+        index = dataset.getIndex();
+        cells = findCells(dataset);
+
+        int dims = index.getDims();
+        childOffsets = new IntBuffer[dims];
+        childIds = new IntBuffer[dims];
+        for (int d = 0; d < dims; d++) {
+            // every existing cell that is not at the root of dimension d is a child of exactly one existing cell in d
+            int edges = 0;
+            for (int cell : cells)
+                if (index.getCoordinate(cell, d) != 0)
+                    edges++;
+            childOffsets[d] = LatticeAdjacency.allocate(cells.length + 1, offHeap);
+            childIds[d] = LatticeAdjacency.allocate(edges, offHeap);
+
+            int pos = 0;
+            for (int slot = 0; slot < cells.length; slot++) {
+                childOffsets[d].put(slot, pos);
+                for (TreeNode child : index.getMember(cells[slot], d).getChildren()) {
+                    int childCell = index.replaceCoordinate(cells[slot], d, child.getIndex());
+                    if (getSlot(childCell) >= 0)
+                        childIds[d].put(pos++, childCell);
+                }
+            }
+            childOffsets[d].put(cells.length, pos);
+        }
+    }
+
+    // the populated leaf cells and all of their ancestors, sorted by id. Ancestors are added frontier by
+    // frontier (parents of the cells added last), so every cell is expanded only once
+    private int[] findCells(Dataset dataset) {
+        int[] frontier = dataset.getPopulatedCells();
+        int[] found = frontier;
+        while (frontier.length > 0) {
+            int[] parents = new int[Math.multiplyExact(frontier.length, index.getDims())];
+            int count = 0;
+            for (int cell : frontier) {
+                for (int d = 0; d < index.getDims(); d++) {
+                    int parent = index.getParent(cell, d);
+                    if (parent >= 0 && Arrays.binarySearch(found, parent) < 0)
+                        parents[count++] = parent;
+                }
+            }
+            frontier = sortedDistinct(parents, count);
+            found = merge(found, frontier);
+        }
+        return found;
+    }
+
+    private static int[] sortedDistinct(int[] array, int length) {
+        Arrays.sort(array, 0, length);
+        int distinct = 0;
+        for (int i = 0; i < length; i++)
+            if (distinct == 0 || array[i] != array[distinct - 1])
+                array[distinct++] = array[i];
+        return Arrays.copyOf(array, distinct);
+    }
+
+    // merges two sorted arrays without common elements
+    private static int[] merge(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length)
+            result[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        while (i < a.length)
+            result[k++] = a[i++];
+        while (j < b.length)
+            result[k++] = b[j++];
+        return result;
+    }
+
+    // number of existing cells
+    public int size() {
+        return cells.length;
+    }
+
+    // ids of the existing cells in increasing order
+    public int[] getCells() {
+        return cells;
+    }
+
+    // slot of the cell, -1 if the cell does not exist
+    public int getSlot(int cell) {
+        int slot = Arrays.binarySearch(cells, cell);
+        return slot < 0 ? -1 : slot;
+    }
+
+    @Override
+    public int getChildCount(int cell, int dim) {
+        int slot = getSlot(cell);
+        return childOffsets[dim].get(slot + 1) - childOffsets[dim].get(slot);
+    }
+
+    @Override
+    public int getChild(int cell, int dim, int i) {
+        return childIds[dim].get(childOffsets[dim].get(getSlot(cell)) + i);
+    }
+
+    @Override
+    public int getParent(int cell, int dim) {
+        return index.getParent(cell, dim);
+    }
+}
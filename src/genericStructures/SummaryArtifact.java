@@ -0,0 +1,251 @@
+package genericStructures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/* A summary (TreeSummary, Cascading Analysts or Overlapping Rectangles) compiled into a binary file that
+ * is memory-mapped for lookups, so the reconstructed value of any cell can be asked for without the lattice
+ * or the values file. Only the hierarchies are read into a LatticeIndex, which maps cell names to ids.
+ * A summary is a set of weighted cells, and the reconstructed value of a cell comes from the summary cells
+ * that cover it entirely, i.e. from its ancestors (and itself):
+ *   - nested summaries (TreeSummary, Cascading Analysts): the weight of the most specific covering cell. The
+ *     cells are stored as a tree that splits every cell along one dimension, same as a TreeSummary, and a
+ *     lookup walks it from the root towards the cell, in time linear in the depth of the cell
+ *   - additive summaries (Overlapping Rectangles): the sum of the weights of all covering cells, which are
+ *     found by enumerating the ancestors of the cell
+ * A cell that no summary cell covers gets the default value of the summary.
+ *
+ * Layout (native byte order):
+ *   int magic, int version, int 1 if additive or 0 if nested
+ *   the hierarchies, same as in LatticeSnapshot, padded to a multiple of 8 bytes
+ *   double default value, int count, padding to a multiple of 8 bytes
+ *   int[count] cell ids in increasing order, int[count] split dimensions (-1 for no split),
+ *   padding to a multiple of 8 bytes, double[count] weights (NaN for a cell without a weight)
+ */
+
+public class SummaryArtifact {
+    private static final int MAGIC = 0x54535341; // "TSSA"
+    private static final int VERSION = 1;
+
+    private LatticeIndex index;
+    private boolean additive;
+    private double defaultValue;
+    private int count;
+    private IntBuffer cells;
+    private IntBuffer splitDims;
+    private DoubleBuffer weights;
+
+    // maps an existing artifact file
+    public SummaryArtifact(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer header = LatticeSnapshot.map(channel, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new IOException("'" + filename + "' is not a summary artifact");
+            additive = header.getInt() == 1;
+            index = new LatticeIndex(LatticeSnapshot.readHierarchies(header));
+            defaultValue = header.getDouble();
+            count = header.getInt();
+            long pos = LatticeSnapshot.align(header.position());
+
+            cells = LatticeSnapshot.map(channel, pos, (long) count * Integer.BYTES).asIntBuffer();
+            pos += (long) count * Integer.BYTES;
+            splitDims = LatticeSnapshot.map(channel, pos, (long) count * Integer.BYTES).asIntBuffer();
+            pos = LatticeSnapshot.align(pos + (long) count * Integer.BYTES);
+            weights = LatticeSnapshot.map(channel, pos, (long) count * Double.BYTES).asDoubleBuffer();
+        }
+    }
+
+    // writes a summary given as weighted cells. The cells of a nested summary must be nested or disjoint, as
+    // the ones of a summary tree or of a Cascading Analysts solution are
+    public static void write(LatticeIndex index, int[] summaryCells, double[] summaryWeights, boolean additive,
+                             double defaultValue, String filename) throws IOException {
+        int[] entryCells;
+        int[] entrySplitDims;
+        double[] entryWeights;
+        if (additive) {
+            Integer[] order = new Integer[summaryCells.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, Comparator.comparingInt(i -> summaryCells[i]));
+            entryCells = new int[order.length];
+            entrySplitDims = new int[order.length];
+            entryWeights = new double[order.length];
+            for (int i = 0; i < order.length; i++) {
+                entryCells[i] = summaryCells[order[i]];
+                entrySplitDims[i] = -1;
+                entryWeights[i] = summaryWeights[order[i]];
+            }
+        } else {
+            Map<Integer, Double> weighted = new HashMap<>();
+            for (int i = 0; i < summaryCells.length; i++)
+                weighted.put(summaryCells[i], summaryWeights[i]);
+            TreeMap<Integer, Integer> tree = new TreeMap<>(); // cell id as key, split dimension as value
+            List<Integer> inside = new ArrayList<>(weighted.keySet());
+            inside.remove(Integer.valueOf(0));
+            Map<Integer, int[][]> chains = new HashMap<>(); // summary cell as key, its ancestor chains as value
+            for (int summaryCell : inside)
+                chains.put(summaryCell, getAncestorChains(index, summaryCell));
+            addSplits(index, 0, new int[index.getDims()], inside, chains, tree);
+            entryCells = new int[tree.size()];
+            entrySplitDims = new int[tree.size()];
+            entryWeights = new double[tree.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : tree.entrySet()) {
+                entryCells[i] = entry.getKey();
+                entrySplitDims[i] = entry.getValue();
+                entryWeights[i++] = weighted.getOrDefault(entry.getKey(), Double.NaN);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.nativeOrder());
+            long pos = 0;
+            pos = LatticeSnapshot.putInt(channel, buffer, pos, MAGIC);
+            pos = LatticeSnapshot.putInt(channel, buffer, pos, VERSION);
+            pos = LatticeSnapshot.putInt(channel, buffer, pos, additive ? 1 : 0);
+            pos = LatticeSnapshot.writeHierarchies(channel, buffer, pos, index);
+            pos = LatticeSnapshot.flushIfFull(channel, buffer, pos, Double.BYTES);
+            buffer.putDouble(defaultValue);
+            pos = LatticeSnapshot.putInt(channel, buffer, pos, entryCells.length);
+            pos = LatticeSnapshot.pad(channel, buffer, pos);
+            for (int cell : entryCells)
+                pos = LatticeSnapshot.putInt(channel, buffer, pos, cell);
+            for (int dim : entrySplitDims)
+                pos = LatticeSnapshot.putInt(channel, buffer, pos, dim);
+            pos = LatticeSnapshot.pad(channel, buffer, pos);
+            for (double weight : entryWeights) {
+                pos = LatticeSnapshot.flushIfFull(channel, buffer, pos, Double.BYTES);
+                buffer.putDouble(weight);
+            }
+            LatticeSnapshot.flushIfFull(channel, buffer, pos, buffer.capacity());
+        }
+    }
+
+    // adds the cell to the tree, split along a dimension in which all the summary cells inside of it are below
+    // it. Such a dimension exists for nested or disjoint summary cells: the one the summary itself split along.
+    // depths are the depths of the cell in the hierarchies, and chains the ancestor chains of the summary cells
+    private static void addSplits(LatticeIndex index, int cell, int[] depths, List<Integer> inside,
+                                  Map<Integer, int[][]> chains, Map<Integer, Integer> tree) {
+        if (inside.isEmpty()) {
+            tree.put(cell, -1);
+            return;
+        }
+        int dim = -1;
+        for (int d = 0; d < index.getDims() && dim < 0; d++) {
+            dim = d;
+            for (int summaryCell : inside) {
+                if (index.getCoordinate(summaryCell, d) == index.getCoordinate(cell, d)) {
+                    dim = -1;
+                    break;
+                }
+            }
+        }
+        if (dim < 0)
+            throw new IllegalArgumentException("The cells of the summary are neither nested nor disjoint under " + index.getName(cell));
+        tree.put(cell, dim);
+
+        Map<Integer, List<Integer>> children = new TreeMap<>(); // child cell as key, summary cells inside of it as value
+        for (int summaryCell : inside) {
+            // the child of the cell that is an ancestor (or self) of the summary cell
+            int child = index.replaceCoordinate(cell, dim, chains.get(summaryCell)[dim][depths[dim] + 1]);
+            List<Integer> childInside = children.computeIfAbsent(child, k -> new ArrayList<>());
+            if (summaryCell != child)
+                childInside.add(summaryCell);
+        }
+        int[] childDepths = depths.clone();
+        childDepths[dim]++;
+        for (Map.Entry<Integer, List<Integer>> child : children.entrySet())
+            addSplits(index, child.getKey(), childDepths, child.getValue(), chains, tree);
+    }
+
+    // coordinates of the ancestors (and self) of the cell in every dimension, from the root down to the cell
+    private static int[][] getAncestorChains(LatticeIndex index, int cell) {
+        int[][] chains = new int[index.getDims()][];
+        for (int d = 0; d < chains.length; d++) {
+            int depth = 0;
+            for (TreeNode member = index.getMember(cell, d).getParent(); member != null; member = member.getParent())
+                depth++;
+            chains[d] = new int[depth + 1];
+            for (TreeNode member = index.getMember(cell, d); member != null; member = member.getParent())
+                chains[d][depth--] = member.getIndex();
+        }
+        return chains;
+    }
+
+    public LatticeIndex getIndex() {
+        return index;
+    }
+
+    // number of cells stored in the artifact
+    public int size() {
+        return count;
+    }
+
+    public double getReconstructedValue(String cellName) {
+        int cell = index.getCell(cellName);
+        if (cell < 0)
+            throw new IllegalArgumentException("'" + cellName + "' is not a cell of the lattice");
+        return getReconstructedValue(cell);
+    }
+
+    // reconstructed value of a leaf or an intermediate cell
+    public double getReconstructedValue(int cell) {
+        return additive ? defaultValue + getCoveringSum(cell, 0, 0) : getMostSpecificWeight(cell);
+    }
+
+    // walks the tree down from the root along the ancestor chains of the cell, in time linear in its depth
+    private double getMostSpecificWeight(int cell) {
+        double value = defaultValue;
+        int[][] chains = getAncestorChains(index, cell);
+        int[] depths = new int[chains.length]; // depths of the current node in the hierarchies
+        int node = 0;
+        int pos = find(node);
+        while (pos >= 0) {
+            if (!Double.isNaN(weights.get(pos)))
+                value = weights.get(pos);
+            int dim = splitDims.get(pos);
+            if (dim < 0 || depths[dim] == chains[dim].length - 1)
+                break; // the cell is not inside of a single child of the node
+            node = index.replaceCoordinate(node, dim, chains[dim][++depths[dim]]);
+            pos = find(node);
+        }
+        return value;
+    }
+
+    // sum of the weights of the covering cells, over the ancestors (or self) of the cell in dimensions dim and above.
+    // ancestor is the ancestor of the cell in the lower dimensions, the root in the others
+    private double getCoveringSum(int cell, int dim, int ancestor) {
+        if (dim == index.getDims()) {
+            int pos = find(ancestor);
+            return pos < 0 ? 0 : weights.get(pos);
+        }
+        double sum = 0;
+        for (TreeNode member = index.getMember(cell, dim); member != null; member = member.getParent())
+            sum += getCoveringSum(cell, dim + 1, index.replaceCoordinate(ancestor, dim, member.getIndex()));
+        return sum;
+    }
+
+    // position of the cell in the artifact, -1 if it is not stored
+    private int find(int cell) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midCell = cells.get(mid);
+            if (midCell < cell)
+                low = mid + 1;
+            else if (midCell > cell)
+                high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+}
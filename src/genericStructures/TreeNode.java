@@ -13,6 +13,7 @@ public class TreeNode {
     private List<TreeNode> children;
     private TreeNode parent;
     private String name;
+    private int index; // position of the node in its hierarchy (pre-order), i.e. its lattice coordinate
 
     public TreeNode(TreeNode parent, String name) {
         this.name = name;
@@ -36,6 +37,14 @@ public class TreeNode {
         this.name = name;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     public TreeNode getParent() {
         return parent;
     }
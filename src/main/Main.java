@@ -1,16 +1,20 @@
 package main;
 
 import exhaustiveTrees.ExhaustiveTrees;
+import genericStructures.Dataset;
+import genericStructures.LatticeSnapshot;
 import genericStructures.ReconstructionError;
+import genericStructures.Session;
 import overlappingRectangles.ORLattice;
+import cascadingAnalysts.CABudgetPoint;
+import cascadingAnalysts.CAImplicitLattice;
 import cascadingAnalysts.CALattice;
 import cascadingAnalysts.CALatticeNode;
 import treeSummary.*;
-import utilities.Utility;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
-import java.util.*;
+import java.util.List;
 
 public class Main {
     /* VG Sales */
@@ -32,31 +36,61 @@ public class Main {
     //        "data/us census/hierarchies/age.txt", "data/us census/hierarchies/edu.txt"};
 
 
-    // a map of values to assign to lattice cells
-    public static HashMap<String, Double> valMap;
+    // a binary snapshot of the lattice and its leaf values (e.g. "data/video games sales/lattice.bin"). If set, it is
+    // written on the first run and memory-mapped on later runs instead of parsing the hierarchy and values files.
+    // It is written again whenever one of these files has changed
+    private static String snapshotFile = null;
+
+    // a checkpoint of the TreeSummary annotations (e.g. "data/video games sales/ts.ckpt"). If set, it is written
+    // on the first run and read back on later runs with the same data and alpha instead of annotating again
+    private static String checkpointFile = null;
+
+    // the hierarchies and the values to assign to lattice cells
+    private static Session session;
 
     public static void main(String[] args) {
         double alpha = 0.1;
         boolean outputErrors = false;
-        Utility.readValuesFile(true, valuesFile);
+        boolean implicitLattice = false; // for lattices too large to be kept as object graphs
         try {
+            loadData();
             runOverlappingRectangles(alpha, 10, outputErrors);
+            if (implicitLattice) {
+                int budget = runTreeSummaryImplicit(alpha, outputErrors);
+                runCascadingAnalystsImplicit(budget, true, outputErrors);
+                return;
+            }
             int budget = runTreeSummaryCode(alpha, outputErrors);
+            // runTreeSummarySweep(new double[]{0.05, 0.1, 0.15, 0.2, 0.25}); // for tuning alpha
             runCascadingAnalystsCode(budget, true, false, outputErrors);
+            // runCascadingAnalystsCurve(budget, true); // error for every budget up to the TS size
             runExhaustiveTrees(alpha); // note that this baseline (ALL-T) is extremely slow
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private static void loadData() throws Exception {
+        if (snapshotFile == null) {
+            session = new Session(new Dataset(hierarchies, valuesFile, true));
+            return;
+        }
+        long sourceKey = LatticeSnapshot.getSourceKey(hierarchies, valuesFile, true);
+        if (!LatticeSnapshot.isCurrent(snapshotFile, sourceKey)) // missing, or older than the hierarchy or values files
+            LatticeSnapshot.write(new Dataset(hierarchies, valuesFile, true), snapshotFile, sourceKey);
+        session = new Session(new LatticeSnapshot(snapshotFile, sourceKey));
+    }
+
     // returns the size of the summary tree
     private static int runTreeSummaryCode(double alpha, boolean outputErrors) throws Exception {
-        TSLattice lattice = new TSLattice(hierarchies, alpha);
+        TSLattice lattice = new TSLattice(session, alpha);
         // System.out.println("number of lattice nodes: " + lattice.getLatticeSize());
         // System.out.println("number of leaves: " + lattice.getLatticeLeavesNum() + "\n");
 
         long startTime = System.currentTimeMillis();
-        lattice.annotate();
+        if (checkpointFile == null)
+            lattice.annotate();
+        else lattice.annotate(checkpointFile);
         TSNode treeSummary = lattice.constructTreeSummary();
         long endTime = System.currentTimeMillis();
 
@@ -65,7 +99,7 @@ public class Main {
             String filename = "data/SMAPE/TS_" + String.format("%.2f", alpha) + ".txt";
             bw = new BufferedWriter(new FileWriter(filename));
         }
-        ReconstructionError error = treeSummary.getReconstructionError(lattice.getMap(), bw);
+        ReconstructionError error = treeSummary.getReconstructionError(bw);
 
         int size = treeSummary.getTsSize();
         System.out.println("TS size = " + size);
@@ -79,8 +113,39 @@ public class Main {
         return size;
     }
 
+    // TreeSummary for several alphas, annotated together on a single lattice
+    private static void runTreeSummarySweep(double[] alphas) throws Exception {
+        long startTime = System.currentTimeMillis();
+        List<TSSweepPoint> points = TSLattice.sweep(session, alphas);
+        long endTime = System.currentTimeMillis();
+
+        for (TSSweepPoint point : points) {
+            System.out.println("alpha = " + String.format("%.2f", point.alpha) + ": TS size = " + point.size
+                    + ", TS average error = " + point.averageError + ", TS worst error = " + point.error.worst);
+        }
+        System.out.println("TS sweep execution time: " + (endTime - startTime) + "\n");
+    }
+
+    // Cascading Analysts for every budget up to the given one, from a single summarization of the lattice
+    private static void runCascadingAnalystsCurve(int maxBudget, boolean takeLog) throws Exception {
+        CALattice lattice = new CALattice(session, takeLog, false, maxBudget);
+        CALatticeNode root = (CALatticeNode) lattice.getRoot();
+
+        long startTime = System.currentTimeMillis();
+        root.calculateValue();
+        root.summarize();
+        List<CABudgetPoint> points = lattice.getErrorCurve();
+        long endTime = System.currentTimeMillis();
+
+        for (CABudgetPoint point : points) {
+            System.out.println("budget = " + point.budget + ": CA size = " + point.size
+                    + ", CA average error = " + point.averageError + ", CA worst error = " + point.error.worst);
+        }
+        System.out.println("CA curve execution time: " + (endTime - startTime) + "\n");
+    }
+
     private static void runCascadingAnalystsCode(int budget, boolean takeLog, boolean levelByLevel, boolean outputErrors) throws Exception {
-        CALattice lattice = new CALattice(hierarchies, takeLog, levelByLevel, budget);
+        CALattice lattice = new CALattice(session, takeLog, levelByLevel, budget);
         CALatticeNode root = (CALatticeNode) lattice.getRoot();
 
         long startTime = System.currentTimeMillis();
@@ -108,9 +173,61 @@ public class Main {
             bw.close();
     }
 
+    // same as runTreeSummaryCode() but on an implicit lattice
+    private static int runTreeSummaryImplicit(double alpha, boolean outputErrors) throws Exception {
+        TSImplicitLattice lattice = new TSImplicitLattice(session, alpha);
+
+        long startTime = System.currentTimeMillis();
+        lattice.annotate();
+        TSNode treeSummary = lattice.constructTreeSummary();
+        long endTime = System.currentTimeMillis();
+
+        BufferedWriter bw = null;
+        if (outputErrors) {
+            String filename = "data/SMAPE/TS_" + String.format("%.2f", alpha) + ".txt";
+            bw = new BufferedWriter(new FileWriter(filename));
+        }
+        ReconstructionError error = treeSummary.getReconstructionError(bw);
+
+        int size = treeSummary.getTsSize();
+        System.out.println("TS size = " + size);
+        System.out.println("TS average error = " + error.sum / lattice.getLatticeLeavesNum());
+        System.out.println("TS worst error = " + error.worst);
+        System.out.println("TS execution time: " + (endTime - startTime) + "\n");
+
+        if (bw != null)
+            bw.close();
+
+        return size;
+    }
+
+    // same as runCascadingAnalystsCode() but on an implicit lattice (always level by level)
+    private static void runCascadingAnalystsImplicit(int budget, boolean takeLog, boolean outputErrors) throws Exception {
+        CAImplicitLattice lattice = new CAImplicitLattice(session, takeLog, budget);
+
+        long startTime = System.currentTimeMillis();
+        lattice.calculateValues();
+        lattice.summarize();
+        long endTime = System.currentTimeMillis();
+
+        BufferedWriter bw = null;
+        if (outputErrors) {
+            String filename = "data/SMAPE/CA_" + budget + ".txt";
+            bw = new BufferedWriter(new FileWriter(filename));
+        }
+
+        ReconstructionError error = lattice.getReconstructionError(bw);
+        System.out.println("CA size = " + lattice.getFinalSize());
+        System.out.println("CA average error = " + error.sum / lattice.getLatticeLeavesNum());
+        System.out.println("CA worst error = " + error.worst);
+        System.out.println("CA execution time: " + (endTime - startTime) + "\n");
+
+        if (bw != null)
+            bw.close();
+    }
 
     private static void runOverlappingRectangles(double alpha, int times, boolean outputErrors) throws Exception {
-        ORLattice lattice = new ORLattice(hierarchies, alpha);
+        ORLattice lattice = new ORLattice(session, alpha);
 
         int worstSize = 0;
         int allSizes = 0;
@@ -146,7 +263,7 @@ public class Main {
     }
 
     private static void runExhaustiveTrees(double alpha) {
-        ExhaustiveTrees lattice = new ExhaustiveTrees(hierarchies, alpha);
+        ExhaustiveTrees lattice = new ExhaustiveTrees(session, alpha);
         lattice.iterate();
 
         System.out.println("ALL-T size = " + lattice.bestSize);
@@ -4,7 +4,10 @@ import genericStructures.*;
 import utilities.Utility;
 
 import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -13,16 +16,15 @@ import java.util.concurrent.ThreadLocalRandom;
 // also available at https://arxiv.org/pdf/1101.1941.pdf
 
 public class ORLattice extends Lattice {
-    static double alpha = 0.0;
-    private HashMap<String, String> nodeColumns; // key is a node name, value is the name of a randomly chosen leaf descendant of that node
-    private HashMap<String, Double> rectangles; // key is rectangle (node) name, value is its corresponding weight
-    private Map<Integer, TreeNode> trees; // contains root nodes of the two tree hierarchies
+    double alpha = 0.0;
+    private int[] nodeColumns; // coordinate of a node of the second hierarchy as index, coordinate of a randomly chosen leaf descendant of that node as value
+    private HashMap<Integer, Double> rectangles; // key is rectangle (node) id, value is its corresponding weight
 
-    public ORLattice(String[] files, double alphaVal) {
-        super(files);
+    public ORLattice(Session session, double alphaVal) {
+        super(session);
         alpha = alphaVal;
-        trees = createLattice(files, SummaryType.OverlappingRectangles);
-        nodeColumns = new HashMap<>();
+        createLattice(SummaryType.OverlappingRectangles);
+        nodeColumns = new int[index.getRadix(1)];
         rectangles = new HashMap<>();
     }
 
@@ -30,57 +32,93 @@ public class ORLattice extends Lattice {
     private void chooseLeaves(TreeNode node) {
         TreeNode temp = node;
         while (!temp.getChildren().isEmpty()) {
-            temp = temp.getChildren().get(ThreadLocalRandom.current().nextInt(0, temp.getChildren().size()));
+            List<TreeNode> children = getColumnChildren(temp);
+            temp = children.get(ThreadLocalRandom.current().nextInt(0, children.size()));
         }
-        nodeColumns.put(node.getName(), temp.getName());
-        for (TreeNode child : node.getChildren())
+        nodeColumns[node.getIndex()] = temp.getIndex();
+        for (TreeNode child : getColumnChildren(node))
             chooseLeaves(child);
     }
 
+    // children of a node of the second hierarchy that have a column in the lattice. In a sparse lattice a column
+    // is missing if none of its cells is populated, otherwise all children have one
+    private List<TreeNode> getColumnChildren(TreeNode node) {
+        TreeNode T1 = index.getTree(0);
+        List<TreeNode> children = new ArrayList<>();
+        for (TreeNode child : node.getChildren())
+            if (getNode(index.getCell(T1.getIndex(), child.getIndex())) != null)
+                children.add(child);
+        return children;
+    }
+
     public void findRectangles() {
-        TreeNode T1 = trees.get(0);
-        TreeNode T2 = trees.get(1);
+        TreeNode T1 = index.getTree(0);
+        TreeNode T2 = index.getTree(1);
         rectangles.clear();
         chooseLeaves(T2);
-        String u = nodeColumns.get(T2.getName()); // refer to step 2 of the TREExTREE algorithm
-        ORLatticeNode n = (ORLatticeNode) map.get(T1.getName() + "," + u);
-        n.subtractCol(null); //subtracting parent column values
+        int u = nodeColumns[T2.getIndex()]; // refer to step 2 of the TREExTREE algorithm
+        ORLatticeNode n = (ORLatticeNode) getNode(index.getCell(T1.getIndex(), u));
+        n.subtractCol(-1, -1); //subtracting parent column values
         n.computeDS();
-        Map<String, Double> temp = n.weightTree();
-        for (String key : temp.keySet()) {
-            String rectangleName = key.split(",")[0] + "," + T2.getName();
-            rectangles.put(rectangleName, temp.get(key));
+        Map<Integer, Double> temp = n.weightTree();
+        for (int key : temp.keySet()) {
+            int rectangle = index.replaceCoordinate(key, 1, T2.getIndex());
+            rectangles.put(rectangle, temp.get(key));
         }
-        for (TreeNode child : T2.getChildren())
+        for (TreeNode child : getColumnChildren(T2))
             findRectangles(child);
     }
 
     private void findRectangles(TreeNode tn) {
-        TreeNode T1 = trees.get(0);
-        String u = nodeColumns.get(tn.getName());
-        ORLatticeNode n = (ORLatticeNode) map.get(T1.getName() + "," + u);
-        n.subtractCol((map.get(T1.getName() + "," + nodeColumns.get(tn.getParent().getName())))); //subtracting parent column values
+        TreeNode T1 = index.getTree(0);
+        int u = nodeColumns[tn.getIndex()];
+        ORLatticeNode n = (ORLatticeNode) getNode(index.getCell(T1.getIndex(), u));
+        n.subtractCol(nodeColumns[tn.getParent().getIndex()], tn.getParent().getIndex()); //subtracting parent column values
         n.computeDS();
-        Map<String, Double> temp = n.weightTree();
-        for (String key : temp.keySet()) {
-            String rectangleName = key.split(",")[0] + "," + tn.getName();
-            rectangles.put(rectangleName, temp.get(key));
+        Map<Integer, Double> temp = n.weightTree();
+        for (int key : temp.keySet()) {
+            int rectangle = index.replaceCoordinate(key, 1, tn.getIndex());
+            rectangles.put(rectangle, temp.get(key));
         }
-        for (TreeNode child : tn.getChildren())
+        for (TreeNode child : getColumnChildren(tn))
             findRectangles(child);
     }
 
+    // sum of the weights of the rectangles found so far in the given column of the second hierarchy and its
+    // ancestors that contain the row of the cell, i.e. what they reconstruct for the row in that column
+    double getCoveringWeight(int cell, int column) {
+        double weight = 0;
+        for (TreeNode row = index.getMember(cell, 0); row != null; row = row.getParent()) {
+            for (TreeNode col = index.getMemberAt(1, column); col != null; col = col.getParent())
+                weight += rectangles.getOrDefault(index.getCell(row.getIndex(), col.getIndex()), 0.0);
+        }
+        return weight;
+    }
+
     public int getRectanglesSize() {
         return rectangles.size();
     }
 
+    // compiles the rectangles of the last findRectangles() for lookups, see SummaryArtifact. The rectangles overlap
+    // and the reconstructed value of a leaf is the sum of the weights of the rectangles that contain it
+    public void writeArtifact(String filename) throws IOException {
+        int[] cells = new int[rectangles.size()];
+        double[] weights = new double[rectangles.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Double> rectangle : rectangles.entrySet()) {
+            cells[i] = rectangle.getKey();
+            weights[i++] = rectangle.getValue();
+        }
+        SummaryArtifact.write(index, cells, weights, true, 0, filename);
+    }
+
     public ReconstructionError getReconstructionError(ReconstructionError error, BufferedWriter bw) throws Exception {
         double worstError = 0;
-        for (String s : rectangles.keySet()) {
-            ((ORLatticeNode) map.get(s)).addToReconstructedValue(rectangles.get(s));
+        for (int cell : rectangles.keySet()) {
+            ((ORLatticeNode) getNode(cell)).addToReconstructedValue(rectangles.get(cell));
         }
 
-        for (LatticeNode node : map.values()) {
+        for (LatticeNode node : nodes) {
             if (node.isLeaf) {
                 double reconstructed = ((ORLatticeNode) node).getReconstructedValue();
                 ((ORLatticeNode) node).setReconstructedValue(0); //initializing to 0 for future runs
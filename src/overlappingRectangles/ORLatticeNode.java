@@ -1,13 +1,12 @@
 package overlappingRectangles;
 
+import genericStructures.Lattice;
 import genericStructures.LatticeNode;
 import genericStructures.Interval;
-import genericStructures.IntervalPoint;
 import utilities.Utility;
 
 import java.util.*;
 
-import static overlappingRectangles.ORLattice.alpha;
 
 public class ORLatticeNode extends LatticeNode {
 
@@ -15,32 +14,37 @@ public class ORLatticeNode extends LatticeNode {
     private double tempValue = value; // C_{l(u)} - C_{l(p(u))}
     private double reconstructedValue = 0;
 
-    public ORLatticeNode(String name) {
-        super(name);
+    public ORLatticeNode(Lattice lattice, int id) {
+        super(lattice, id);
         intervals = new ArrayList<>();
     }
 
     void computeDS() {
         if (isLeaf) {
+            double alpha = ((ORLattice) lattice).alpha;
             Interval interval = tempValue > 0 ? new Interval(tempValue - tempValue * alpha, tempValue + tempValue * alpha) :
                     new Interval(tempValue + tempValue * alpha, tempValue - tempValue * alpha);
             intervals.add(interval);
         } else {
-            if (!children.get(0).isEmpty()) {
-                for (LatticeNode child : children.get(0))
-                    ((ORLatticeNode) child).computeDS();
-
-                Map<IntervalPoint, IntervalPoint> pointMap = new HashMap<>();
-                List<IntervalPoint> points = new ArrayList<>();
-
-                for (LatticeNode child : children.get(0)) {
-                    for (Interval interval : ((ORLatticeNode) child).intervals) {
-                        Utility.addPointIntervals(pointMap, points, interval);
+            if (hasChildren(0)) {
+                for (int i = 0; i < getChildCount(0); i++)
+                    ((ORLatticeNode) getChild(0, i)).computeDS();
+
+                int n = 0;
+                for (int i = 0; i < getChildCount(0); i++)
+                    n += ((ORLatticeNode) getChild(0, i)).intervals.size();
+                double[] starts = new double[n];
+                double[] ends = new double[n];
+                n = 0;
+                for (int i = 0; i < getChildCount(0); i++) {
+                    for (Interval interval : ((ORLatticeNode) getChild(0, i)).intervals) {
+                        starts[n] = interval.start;
+                        ends[n++] = interval.end;
                     }
                 }
 
-                if (!points.isEmpty()) {
-                    List<double[]> mostOverlappedIntervals = Utility.getMostOverlappedIntervals(points, pointMap);
+                if (n > 0) {
+                    List<double[]> mostOverlappedIntervals = Utility.getMostOverlappedIntervals(starts, ends, n);
                     for (double[] overlap : mostOverlappedIntervals) {
                         intervals.add(new Interval(overlap[0], overlap[1]));
                     }
@@ -50,49 +54,54 @@ public class ORLatticeNode extends LatticeNode {
     }
 
 
-    Map<String, Double> weightTree() {
-        Map<String, Double> rectangles = new HashMap<>();
+    Map<Integer, Double> weightTree() {
+        Map<Integer, Double> rectangles = new HashMap<>();
 
         Interval proposedInterval = intervals.get(0); // get any interval
         if (proposedInterval.getMidPoint() != 0)
-            rectangles.put(name, proposedInterval.getMidPoint());
+            rectangles.put(id, proposedInterval.getMidPoint());
 
-        weightTreeHelper(proposedInterval.getMidPoint(), children.get(0), rectangles);
+        weightTreeHelper(proposedInterval.getMidPoint(), this, rectangles);
         return rectangles;
     }
 
-    private void weightTreeHelper(double parentRootToLeaf, List<LatticeNode> children, Map<String, Double> rectangles) {
-        for (LatticeNode child : children) {
+    // weights the children of the node in the first dimension
+    private void weightTreeHelper(double parentRootToLeaf, ORLatticeNode node, Map<Integer, Double> rectangles) {
+        for (int i = 0; i < node.getChildCount(0); i++) {
+            ORLatticeNode child = (ORLatticeNode) node.getChild(0, i);
             boolean matchedInterval = false;
-            for (Interval proposedInterval : ((ORLatticeNode) child).intervals) {
+            for (Interval proposedInterval : child.intervals) {
                 if (proposedInterval.containsPoint(parentRootToLeaf)) {
-                    weightTreeHelper(parentRootToLeaf, ((ORLatticeNode) child).children.get(0), rectangles);
+                    weightTreeHelper(parentRootToLeaf, child, rectangles);
                     matchedInterval = true;
                     break;
                 }
             }
             if (!matchedInterval) {
-                Interval proposedInterval = ((ORLatticeNode) child).intervals.get(0);
+                Interval proposedInterval = child.intervals.get(0);
                 if (proposedInterval.getMidPoint() - parentRootToLeaf != 0)
-                    rectangles.put(child.name, proposedInterval.getMidPoint() - parentRootToLeaf);
-                weightTreeHelper(proposedInterval.getMidPoint(), ((ORLatticeNode) child).children.get(0), rectangles);
+                    rectangles.put(child.id, proposedInterval.getMidPoint() - parentRootToLeaf);
+                weightTreeHelper(proposedInterval.getMidPoint(), child, rectangles);
             }
         }
     }
 
-    void subtractCol(LatticeNode node) {
+    // column is the coordinate of the second hierarchy to subtract the values of (-1 for none), and parent the
+    // coordinate of the node of the second hierarchy whose column it was chosen for
+    void subtractCol(int column, int parent) {
         intervals.clear();
         if (isLeaf) {
-            if (node == null)
+            if (column < 0) {
                 tempValue = value;
+                return;
+            }
+            LatticeNode node = lattice.getNode(lattice.getIndex().replaceCoordinate(id, 1, column));
+            if (node == null) // a missing cell of a sparse lattice: the rectangles of the parent still cover this row
+                tempValue = value - ((ORLattice) lattice).getCoveringWeight(id, parent);
             else tempValue = value - node.getValue();
         } else {
-            for (int i = 0; i < children.get(0).size(); i++) {
-                if (node == null)
-                    ((ORLatticeNode) children.get(0).get(i)).subtractCol(node);
-                else
-                    ((ORLatticeNode) children.get(0).get(i)).subtractCol(node.children.get(0).get(i));
-            }
+            for (int i = 0; i < getChildCount(0); i++)
+                ((ORLatticeNode) getChild(0, i)).subtractCol(column, parent);
         }
     }
 
@@ -108,9 +117,9 @@ public class ORLatticeNode extends LatticeNode {
         if (isLeaf)
             reconstructedValue += weight;
         else {
-            List<LatticeNode> childList = children.get(0).isEmpty() ? children.get(1) : children.get(0);
-            for (LatticeNode child : childList) {
-                ((ORLatticeNode) child).addToReconstructedValue(weight);
+            int dim = hasChildren(0) ? 0 : 1;
+            for (int i = 0; i < getChildCount(dim); i++) {
+                ((ORLatticeNode) getChild(dim, i)).addToReconstructedValue(weight);
             }
         }
     }
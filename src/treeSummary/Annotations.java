@@ -0,0 +1,192 @@
+package treeSummary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// The optimal annotations of a lattice node for one alpha, packed in parallel arrays. All of them have the
+// least cost of the node: a candidate cheaper than the kept annotations replaces them all, and a costlier one
+// is dropped, so suboptimal annotations are filtered out as they come.
+class Annotations {
+    double[] starts = new double[1]; // start of the proposed interval of each annotation
+    double[] ends = new double[1]; // end of the proposed interval of each annotation
+    int[] dims = new int[1]; // dimension of each annotation
+    int count = 0;
+    int leastCost = Integer.MAX_VALUE;
+
+    void add(double start, double end, int cost, int dim) {
+        if (cost > leastCost)
+            return;
+        if (cost < leastCost) {
+            leastCost = cost;
+            count = 0;
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * count);
+            ends = Arrays.copyOf(ends, 2 * count);
+            dims = Arrays.copyOf(dims, 2 * count);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        dims[count++] = dim;
+    }
+
+    // whether one of the annotations intersects [start, end]
+    boolean intersects(double start, double end) {
+        for (int a = 0; a < count; a++) {
+            if (starts[a] <= end && start <= ends[a])
+                return true;
+        }
+        return false;
+    }
+
+    // the first annotation whose interval contains the point, -1 if there is none
+    int find(double point) {
+        for (int a = 0; a < count; a++) {
+            if (starts[a] <= point && point <= ends[a])
+                return a;
+        }
+        return -1;
+    }
+
+    // whether both sets hold the same annotations in the same order
+    boolean sameAs(Annotations other) {
+        if (count != other.count || leastCost != other.leastCost)
+            return false;
+        for (int a = 0; a < count; a++) {
+            if (starts[a] != other.starts[a] || ends[a] != other.ends[a] || dims[a] != other.dims[a])
+                return false;
+        }
+        return true;
+    }
+
+    // appends the union of the intervals to starts and ends from position n, see union(), and returns the position
+    // after them
+    int appendUnion(double[] starts, double[] ends, int n) {
+        System.arraycopy(this.starts, 0, starts, n, count);
+        System.arraycopy(this.ends, 0, ends, n, count);
+        return union(starts, ends, n, n + count);
+    }
+
+    // replaces the intervals from position from to position to by their union, as disjoint intervals in increasing
+    // order from position from, and returns the position after them. The intervals of one node then count once in
+    // the overlaps of its parent, so the most overlapped intervals are covered by the most children
+    static int union(double[] starts, double[] ends, int from, int to) {
+        if (to - from <= 1)
+            return to; // a single interval is its own union, nothing to sort
+        Integer[] order = new Integer[to - from];
+        for (int a = 0; a < order.length; a++)
+            order[a] = from + a;
+        Arrays.sort(order, Comparator.comparingDouble(a -> starts[a]));
+        double[] sortedStarts = new double[order.length];
+        double[] sortedEnds = new double[order.length];
+        for (int a = 0; a < order.length; a++) {
+            sortedStarts[a] = starts[order[a]];
+            sortedEnds[a] = ends[order[a]];
+        }
+        int n = from;
+        for (int a = 0; a < order.length; a++) {
+            if (n > from && sortedStarts[a] <= ends[n - 1]) {
+                ends[n - 1] = Math.max(ends[n - 1], sortedEnds[a]);
+            } else {
+                starts[n] = sortedStarts[a];
+                ends[n++] = sortedEnds[a];
+            }
+        }
+        return n;
+    }
+
+    // Only if there are more annotations than the cap: drops the annotations whose interval is contained in the
+    // interval of another one (the first of equal intervals is kept), then keeps the cap widest ones if there are
+    // still more. The remaining annotations stay in the same order. All annotations of a node have the least cost,
+    // so dropping dominated ones changes neither the cost of the node nor the children its parents match, but the
+    // summary may then take another annotation of the same cost. Returns the number of annotations dropped by the
+    // cap, which may make the summary larger than the optimal one
+    int prune(int cap) {
+        if (count <= cap)
+            return 0;
+        boolean[] kept = new boolean[count];
+        int keptNum = 0;
+        double maxEnd = Double.NEGATIVE_INFINITY;
+        // by increasing start, then decreasing end: an interval is dominated iff an earlier one ends after it
+        for (int a : getOrder(Comparator.<Integer>comparingDouble(a -> starts[a]).thenComparingDouble(a -> -ends[a]))) {
+            if (ends[a] > maxEnd) {
+                kept[a] = true;
+                keptNum++;
+                maxEnd = ends[a];
+            }
+        }
+
+        int dropped = 0;
+        if (keptNum > cap) {
+            int rank = 0;
+            for (int a : getOrder(Comparator.<Integer>comparingDouble(a -> starts[a] - ends[a]))) {
+                if (kept[a] && rank++ >= cap) {
+                    kept[a] = false;
+                    dropped++;
+                }
+            }
+        }
+
+        int n = 0;
+        for (int a = 0; a < count; a++) {
+            if (kept[a]) {
+                starts[n] = starts[a];
+                ends[n] = ends[a];
+                dims[n++] = dims[a];
+            }
+        }
+        count = n;
+        return dropped;
+    }
+
+    // positions of the annotations sorted by the comparator, stable for ties
+    private int[] getOrder(Comparator<Integer> comparator) {
+        Integer[] order = new Integer[count];
+        for (int a = 0; a < count; a++)
+            order[a] = a;
+        Arrays.sort(order, comparator);
+        int[] result = new int[count];
+        for (int a = 0; a < count; a++)
+            result[a] = order[a];
+        return result;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(count);
+        out.writeInt(leastCost);
+        for (int a = 0; a < count; a++) {
+            out.writeDouble(starts[a]);
+            out.writeDouble(ends[a]);
+            out.writeInt(dims[a]);
+        }
+    }
+
+    static Annotations read(DataInputStream in) throws IOException {
+        Annotations annotations = new Annotations();
+        int count = in.readInt();
+        annotations.leastCost = in.readInt();
+        annotations.starts = new double[Math.max(count, 1)];
+        annotations.ends = new double[Math.max(count, 1)];
+        annotations.dims = new int[Math.max(count, 1)];
+        for (int a = 0; a < count; a++) {
+            annotations.starts[a] = in.readDouble();
+            annotations.ends[a] = in.readDouble();
+            annotations.dims[a] = in.readInt();
+        }
+        annotations.count = count;
+        return annotations;
+    }
+
+    double getMidPoint(int a) {
+        return (starts[a] + ends[a]) / 2;
+    }
+
+    void print() {
+        for (int a = 0; a < count; a++) {
+            System.out.print(" <[" + String.format("%.4f", starts[a]) + ", " + String.format("%.4f", ends[a]) + "], " + leastCost + ", " + dims[a] + "> ");
+        }
+    }
+}
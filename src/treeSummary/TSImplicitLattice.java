@@ -0,0 +1,215 @@
+package treeSummary;
+
+import genericStructures.Lattice;
+import genericStructures.Session;
+import utilities.Utility;
+
+import java.util.*;
+
+// TreeSummary on an implicit lattice: no LatticeNode is ever created. The children of a cell are computed
+// from its coordinates by the LatticeIndex, and the annotations are kept in primitive arrays. The annotations
+// are the same as the filtered annotations of TSLatticeNode, so both produce the same summary.
+// This is the low-memory mode of TreeSummary, in two passes:
+//   - annotate() goes level by level from the deepest one up, same as CALatticeNode.summarizeSpaceEfficient().
+//     A level only needs the least costs and the optimal intervals of the level below, so the least costs are
+//     kept for two levels at a time, and the candidate annotations of a cell are filtered as they come
+//   - constructTreeSummary() goes top-down and only needs the optimal intervals and their dimensions. They are
+//     packed into one pool per level when the level is done, and nothing else is kept for a cell
+// The pools of all levels are kept for constructTreeSummary(). Besides them, every cell takes two ints (its position
+// by level and its offset in the pool of its level). The scratch arrays of a cell are reused from cell to cell, but
+// the overlap sweep still returns a new list per cell and dimension, and a child with several optimal intervals
+// allocates their union, see Annotations.union().
+public class TSImplicitLattice extends Lattice {
+    private double alpha;
+    private int[] cells; // ids of all cells ordered by level (and by id within a level)
+    private int[] levelStarts; // position in cells of the first cell of every level, followed by the total size
+    private int[] offsets; // position in cells as index, first annotation of the cell in the pool of its level
+    private double[][] bounds; // level as index, proposed intervals of the optimal annotations as (start, end) pairs
+    private int[][] annotationDims; // level as index, dimension of each optimal annotation
+
+    public TSImplicitLattice(Session session, double alphaVal) {
+        super(session);
+        alpha = alphaVal;
+        createImplicitLattice();
+        levelStarts = new int[index.getMaxLevel() + 2];
+        cells = index.getCellsByLevel(levelStarts);
+        offsets = new int[cells.length];
+        bounds = new double[levelStarts.length - 1][];
+        annotationDims = new int[levelStarts.length - 1][];
+    }
+
+    @Override
+    public double getValue(int cell) {
+        return index.isLeaf(cell) ? getLeafValue(cell) : Double.NaN;
+    }
+
+    public void annotate() {
+        int[] costs = new int[0]; // least cost of each cell of the level below, position in the level as index
+        LevelBuffer buffer = new LevelBuffer();
+        for (int level = levelStarts.length - 2; level >= 0; level--) {
+            int[] levelCosts = new int[levelStarts[level + 1] - levelStarts[level]];
+            buffer.size = 0;
+            for (int p = levelStarts[level]; p < levelStarts[level + 1]; p++) {
+                offsets[p] = buffer.size;
+                if (index.isLeaf(cells[p]))
+                    levelCosts[p - levelStarts[level]] = annotateLeaf(cells[p], buffer);
+                else levelCosts[p - levelStarts[level]] = annotateCell(cells[p], level, costs, buffer);
+            }
+            bounds[level] = Arrays.copyOf(buffer.bounds, 2 * buffer.size);
+            annotationDims[level] = Arrays.copyOf(buffer.dims, buffer.size);
+            costs = levelCosts; // the costs of the level below are not needed anymore
+        }
+    }
+
+    // the annotations of the level being annotated, appended cell by cell
+    private static class LevelBuffer {
+        double[] bounds = new double[2];
+        int[] dims = new int[1];
+        int size = 0;
+        // scratch arrays of annotateCell(), reused from cell to cell
+        int[] children = new int[1]; // positions of the children in cells
+        double[] starts = new double[1]; // intervals of the children
+        double[] ends = new double[1];
+
+        // grows the scratch arrays to the given number of children and of their intervals
+        void reserve(int childNum, int intervals) {
+            if (children.length < childNum)
+                children = new int[Math.max(childNum, 2 * children.length)];
+            if (starts.length < intervals) {
+                starts = new double[Math.max(intervals, 2 * starts.length)];
+                ends = new double[starts.length];
+            }
+        }
+
+        void add(double start, double end, int dim) {
+            if (size == dims.length) {
+                bounds = Arrays.copyOf(bounds, 4 * size);
+                dims = Arrays.copyOf(dims, 2 * size);
+            }
+            bounds[2 * size] = start;
+            bounds[2 * size + 1] = end;
+            dims[size++] = dim;
+        }
+    }
+
+    private int annotateLeaf(int cell, LevelBuffer buffer) {
+        double value = getLeafValue(cell);
+        if (value > 0)
+            buffer.add(value - value * alpha, value + value * alpha, 0);
+        else buffer.add(value + value * alpha, value - value * alpha, 0);
+        return 1;
+    }
+
+    // appends the optimal annotations of the cell to the buffer and returns their cost. costs are the least
+    // costs of the level below, where all children of the cell are
+    private int annotateCell(int cell, int level, int[] costs, LevelBuffer buffer) {
+        int first = buffer.size;
+        int minCost = Integer.MAX_VALUE;
+
+        for (int dim = 0; dim < dims; dim++) {
+            int childNum = index.getChildCount(cell, dim);
+            if (childNum == 0)
+                continue;
+
+            int n = 0;
+            int childrenCost = 0;
+            buffer.reserve(childNum, 0);
+            int[] children = buffer.children;
+            for (int i = 0; i < childNum; i++) {
+                children[i] = getPosition(index.getChild(cell, dim, i), level + 1);
+                childrenCost += costs[children[i] - levelStarts[level + 1]];
+                n += getAnnotationCount(children[i], level + 1);
+            }
+            buffer.reserve(childNum, n);
+            double[] starts = buffer.starts;
+            double[] ends = buffer.ends;
+            n = 0;
+            for (int i = 0; i < childNum; i++) {
+                int child = children[i];
+                int childFirst = n;
+                for (int a = offsets[child]; a < offsets[child] + getAnnotationCount(child, level + 1); a++) {
+                    starts[n] = bounds[level + 1][2 * a];
+                    ends[n++] = bounds[level + 1][2 * a + 1];
+                }
+                n = Annotations.union(starts, ends, childFirst, n); // same as in TSLatticeNode.annotateDim()
+            }
+
+            for (double[] overlap : Utility.getMostOverlappedIntervals(starts, ends, n)) {
+                int cost = 1 + childrenCost; // 1 for the root node + cost of each child
+                for (int i = 0; i < childNum; i++) {
+                    if (cheapestIncludes(children[i], level + 1, overlap))
+                        cost--; // but -1 if child matches root
+                }
+                // keep the optimal annotations only
+                if (cost > minCost)
+                    continue;
+                if (cost < minCost) {
+                    minCost = cost;
+                    buffer.size = first;
+                }
+                buffer.add(overlap[0], overlap[1], dim);
+            }
+        }
+        return minCost;
+    }
+
+    // position of the cell in cells, the cell must be on the given level
+    private int getPosition(int cell, int level) {
+        return Arrays.binarySearch(cells, levelStarts[level], levelStarts[level + 1], cell);
+    }
+
+    // number of the optimal annotations of the cell at the given position, on the given level
+    private int getAnnotationCount(int p, int level) {
+        int end = p + 1 < levelStarts[level + 1] ? offsets[p + 1] : annotationDims[level].length;
+        return end - offsets[p];
+    }
+
+    private boolean cheapestIncludes(int p, int level, double[] weight) {
+        for (int a = offsets[p]; a < offsets[p] + getAnnotationCount(p, level); a++) {
+            if (bounds[level][2 * a] <= weight[1] && weight[0] <= bounds[level][2 * a + 1])
+                return true;
+        }
+        return false;
+    }
+
+    public TSNode constructTreeSummary() {
+        TSNode root = new TSNode(null, this, 0);
+
+        // take any annotation, all annotations at root are optimal
+        double midPoint = (bounds[0][0] + bounds[0][1]) / 2;
+        root.setWeight(midPoint);
+        root.setClosestAncestorWeight(midPoint);
+        constructSummaryHelper(root, 0, 0, annotationDims[0][0]);
+
+        return root;
+    }
+
+    // adds the children of the cell on the given level in the given dimension to the summary
+    private void constructSummaryHelper(TSNode parent, int cell, int level, int dim) {
+        int childLevel = level + 1;
+        for (int i = 0; i < index.getChildCount(cell, dim); i++) {
+            int child = index.getChild(cell, dim, i);
+            int p = getPosition(child, childLevel);
+            TSNode n = new TSNode(parent, this, child);
+            parent.addChild(n);
+
+            double[] childBounds = bounds[childLevel];
+            int childDim = -1;
+            for (int a = offsets[p]; a < offsets[p] + getAnnotationCount(p, childLevel); a++) {
+                if (childBounds[2 * a] <= parent.getClosestAncestorWeight() && parent.getClosestAncestorWeight() <= childBounds[2 * a + 1]) {
+                    n.setWeight(Double.NaN);
+                    n.setClosestAncestorWeight(parent.getClosestAncestorWeight());
+                    childDim = annotationDims[childLevel][a];
+                    break;
+                }
+            }
+            if (childDim == -1) {
+                double midPoint = (childBounds[2 * offsets[p]] + childBounds[2 * offsets[p] + 1]) / 2;
+                n.setWeight(midPoint);
+                n.setClosestAncestorWeight(midPoint);
+                childDim = annotationDims[childLevel][offsets[p]];
+            }
+            constructSummaryHelper(n, child, childLevel, childDim);
+        }
+    }
+}
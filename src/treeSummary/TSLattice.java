@@ -1,19 +1,234 @@
 package treeSummary;
 
 import genericStructures.Lattice;
+import genericStructures.LatticeNode;
+import genericStructures.Session;
 import genericStructures.SummaryType;
 
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class TSLattice extends Lattice {
-    static double alpha = 0.1;
+    private static final int SUMMARY_CACHE_SIZE = 64;
+
+    double[] alphas; // every node is annotated for each of them in the same traversal
+    int maxAnnotations; // see Session.maxAnnotations
+    AtomicLong droppedAnnotations = new AtomicLong(); // optimal annotations dropped by the cap of maxAnnotations
+    private SortedMap<Integer, Double> updatedValues = new TreeMap<>(); // leaf values set by update(), cell id as key
+    // summaries of sub-cubes, least recently used first. Key is the cell id times the number of alphas plus the alpha index
+    private LinkedHashMap<Long, TSNode> summaries = new LinkedHashMap<Long, TSNode>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TSNode> eldest) {
+            return size() > SUMMARY_CACHE_SIZE;
+        }
+    };
 
-    public TSLattice(String[] files, double alphaVal) {
-        super(files);
-        alpha = alphaVal;
-        createLattice(files, SummaryType.TreeSummary);
+    public TSLattice(Session session, double alphaVal) {
+        this(session, new double[]{alphaVal});
     }
 
+    // a lattice that is summarized for several alphas at once, e.g. to tune the tolerance. The links, the leaf
+    // values and the traversal are shared, and each node keeps separate annotations for each alpha
+    public TSLattice(Session session, double[] alphaVals) {
+        super(session);
+        alphas = alphaVals.clone();
+        maxAnnotations = session.maxAnnotations;
+        createLattice(SummaryType.TreeSummary);
+    }
+
+    // summarizes the lattice for every alpha in one annotation pass (on the common ForkJoinPool if the session
+    // asks for parallel summarization), and returns the summary tree and its reconstruction error for each alpha,
+    // in the order of the alphas
+    public static List<TSSweepPoint> sweep(Session session, double[] alphaVals) throws Exception {
+        TSLattice lattice = new TSLattice(session, alphaVals);
+        lattice.annotate();
+        int leaves = lattice.getLatticeLeavesNum();
+        List<TSSweepPoint> points = new ArrayList<>();
+        for (int k = 0; k < alphaVals.length; k++) {
+            TSNode summary = lattice.constructTreeSummary(k);
+            points.add(new TSSweepPoint(alphaVals[k], summary, summary.getReconstructionError(null), leaves));
+        }
+        return points;
+    }
+
+    // Number of optimal annotations that the cap of Session.maxAnnotations has dropped so far. The summary has the
+    // optimal size if it is 0, otherwise it may be larger, since some parents may have missed a match
+    public long getDroppedAnnotations() {
+        return droppedAnnotations.get();
+    }
+
+    // annotates the nodes for all alphas
     public void annotate() {
-        ((TSLatticeNode) root).annotate();
+        if (session.parallelSummarization)
+            ForkJoinPool.commonPool().invoke(new AnnotateAll());
+        else ((TSLatticeNode) root).annotate();
+    }
+
+    // Annotation checkpoints: the annotations of all nodes, so that a later run on the same data skips annotate().
+    // A checkpoint is keyed by the fingerprint of the dataset (hierarchies and leaf values, with the values set by
+    // update() in place of those of the dataset), the alphas and whether the lattice is sparse, and is only read
+    // back into a lattice with the same key.
+    // Layout: int magic, int version, long key, int node count, then for every node in slot order the number of its
+    // annotations dropped by the cap, and its annotations per alpha: int count, int least cost, count times
+    // (double start, double end, int dim)
+    private static final int CHECKPOINT_MAGIC = 0x5453434B; // "TSCK"
+    private static final int CHECKPOINT_VERSION = 3;
+
+    private long getCheckpointKey() {
+        long key = dataset.getFingerprint(updatedValues);
+        for (double alpha : alphas)
+            key = 31 * key + Double.hashCode(alpha);
+        key = 31 * key + maxAnnotations;
+        return 31 * key + (session.sparse ? 1 : 0);
+    }
+
+    // annotates the lattice, or reads its annotations from the checkpoint if the file has one for this lattice.
+    // Otherwise the annotations are written to the file once they are done
+    public void annotate(String checkpointFile) throws IOException {
+        if (readCheckpoint(checkpointFile))
+            return;
+        annotate();
+        writeCheckpoint(checkpointFile);
+    }
+
+    public void writeCheckpoint(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeLong(getCheckpointKey());
+            out.writeInt(nodes.length);
+            for (LatticeNode node : nodes)
+                ((TSLatticeNode) node).writeAnnotations(out);
+        }
+    }
+
+    // returns false, and leaves the lattice unannotated, if there is no checkpoint of this lattice in the file
+    public boolean readCheckpoint(String filename) throws IOException {
+        if (!new File(filename).exists())
+            return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION
+                    || in.readLong() != getCheckpointKey() || in.readInt() != nodes.length)
+                return false;
+            synchronized (summaries) {
+                summaries.clear(); // they were constructed from the annotations that are replaced
+            }
+            long dropped = 0;
+            for (LatticeNode node : nodes)
+                dropped += ((TSLatticeNode) node).readAnnotations(in);
+            droppedAnnotations.set(dropped); // a summary read back reports the same loss as the one written
+        }
+        return true;
+    }
+
+    // Incremental maintenance of an annotated lattice: sets new values of leaf cells and annotates again only
+    // the cells whose annotations may have changed. A changed cell makes its parents (in all dimensions) dirty,
+    // and the dirty cells are annotated in decreasing id order, so every cell comes after all of its dirty
+    // descendants. The propagation stops at the cells whose annotations stay the same. The annotations are the
+    // same as those of a lattice built on the new values, call constructTreeSummary() to get the new summary.
+    // Returns the number of cells that were annotated again. The arguments are checked before any value is set,
+    // so the lattice is left as it was if they are rejected
+    public int update(int[] cells, double[] newValues) {
+        if (cells.length != newValues.length)
+            throw new IllegalArgumentException(cells.length + " cells but " + newValues.length + " new values");
+        for (int i = 0; i < cells.length; i++) {
+            LatticeNode node = getNode(cells[i]);
+            if (node == null || !node.isLeaf)
+                throw new IllegalArgumentException("Cell " + cells[i] + " is not a leaf cell of the lattice");
+            if (Double.isNaN(newValues[i]))
+                throw new IllegalArgumentException("The new value of cell " + cells[i] + " is NaN");
+        }
+
+        PriorityQueue<Integer> dirty = new PriorityQueue<>(Comparator.reverseOrder());
+        Set<Integer> queued = new HashSet<>();
+        for (int i = 0; i < cells.length; i++) {
+            ((TSLatticeNode) getNode(cells[i])).setValue(newValues[i]);
+            updatedValues.put(cells[i], newValues[i]);
+            if (queued.add(cells[i]))
+                dirty.add(cells[i]);
+        }
+
+        synchronized (summaries) {
+            summaries.clear();
+        }
+        int reannotated = 0;
+        while (!dirty.isEmpty()) {
+            TSLatticeNode node = (TSLatticeNode) getNode(dirty.poll());
+            reannotated++;
+            if (!node.reannotate())
+                continue;
+            for (int dim = 0; dim < dims; dim++) {
+                LatticeNode parent = node.getParent(dim);
+                if (parent != null && queued.add(parent.id))
+                    dirty.add(parent.id);
+            }
+        }
+        return reannotated;
+    }
+
+    // Parallel annotation of the lattice, bottom-up. Every node counts its children (in all dimensions) that
+    // are not annotated yet, and a node is annotated as soon as that counter drops to zero, by the task that
+    // annotated its last child. The leaves are ready from the start, so independent sub-lattices are annotated
+    // concurrently and idle workers steal the ready nodes. The annotations of a node only depend on those of its
+    // children, so they are the same as with the sequential annotate().
+    @SuppressWarnings("serial") // fork-join tasks are never serialized
+    private class AnnotateAll extends CountedCompleter<Void> {
+        private AtomicIntegerArray pending; // slot of a node as index, number of its children to be annotated as value
+
+        @Override
+        public void compute() {
+            pending = new AtomicIntegerArray(nodes.length);
+            for (int slot = 0; slot < nodes.length; slot++) {
+                int children = 0;
+                for (int dim = 0; dim < dims; dim++)
+                    children += nodes[slot].getChildCount(dim);
+                pending.set(slot, children);
+            }
+            for (LatticeNode node : nodes) {
+                if (node.isLeaf) {
+                    addToPendingCount(1);
+                    new AnnotateTask(this, (TSLatticeNode) node).fork();
+                }
+            }
+            tryComplete();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private class AnnotateTask extends CountedCompleter<Void> {
+        private AnnotateAll all;
+        private TSLatticeNode node;
+
+        AnnotateTask(AnnotateAll all, TSLatticeNode node) {
+            super(all);
+            this.all = all;
+            this.node = node;
+        }
+
+        @Override
+        public void compute() {
+            // the task goes on with one of the parents that became ready and forks the others
+            while (node != null) {
+                node.annotateCell();
+                TSLatticeNode next = null;
+                for (int dim = 0; dim < dims; dim++) {
+                    LatticeNode parent = node.getParent(dim);
+                    if (parent != null && all.pending.decrementAndGet(getSlot(parent.id)) == 0) {
+                        if (next != null) {
+                            all.addToPendingCount(1);
+                            new AnnotateTask(all, next).fork();
+                        }
+                        next = (TSLatticeNode) parent;
+                    }
+                }
+                node = next;
+            }
+            tryComplete();
+        }
     }
 
     public void print() {
@@ -21,7 +236,41 @@ public class TSLattice extends Lattice {
     }
 
     public TSNode constructTreeSummary() {
-        return ((TSLatticeNode) root).constructSummary();
+        return constructTreeSummary(0);
+    }
+
+    // the summary for the alpha of the given index
+    public TSNode constructTreeSummary(int alphaIndex) {
+        return ((TSLatticeNode) root).constructSummary(alphaIndex);
+    }
+
+    // the summary of the sub-cube of a cell, e.g. "Northeast,Male,All ages,All edu" (for the first alpha)
+    public TSNode constructTreeSummary(String cellName) {
+        int cell = index.getCell(cellName);
+        if (cell < 0)
+            throw new IllegalArgumentException("'" + cellName + "' is not a cell of the lattice");
+        return constructTreeSummary(cell, 0);
+    }
+
+    // The summary of the sub-cube of a cell, i.e. of the cell and its descendants. The annotations of a cell only
+    // depend on its sub-cube, so they are those of a lattice built on the sub-cube alone, and the summary is
+    // constructed from the cell the same way as from the root. The last summaries are cached, and the cache is
+    // cleared by update()
+    public TSNode constructTreeSummary(int cell, int alphaIndex) {
+        TSLatticeNode node = (TSLatticeNode) getNode(cell);
+        if (node == null)
+            throw new IllegalArgumentException("Cell " + cell + " is not a cell of the lattice");
+        long key = (long) cell * alphas.length + alphaIndex;
+        synchronized (summaries) {
+            TSNode summary = summaries.get(key);
+            if (summary != null)
+                return summary;
+        }
+        TSNode summary = node.constructSummary(alphaIndex);
+        synchronized (summaries) {
+            summaries.put(key, summary);
+        }
+        return summary;
     }
 
 }
@@ -1,24 +1,27 @@
 package treeSummary;
 
-import genericStructures.Interval;
-import genericStructures.IntervalPoint;
 import genericStructures.Lattice;
 import genericStructures.LatticeNode;
 import utilities.Utility;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
 
-import static treeSummary.TSLattice.alpha;
 
 // TreeSummary algorithm is implemented in this class
 public class TSLatticeNode extends LatticeNode {
 
-    private List<Annotation> annotations;
+    private Annotations[] annotations; // optimal annotations for each alpha of the lattice, alpha index as index
     private boolean annotated = false;
+    private int droppedAnnotations = 0; // optimal annotations of this node dropped by the cap, over all alphas
 
-    public TSLatticeNode(String name) {
-        super(name);
-        this.annotations = new ArrayList<>();
+    public TSLatticeNode(Lattice lattice, int id) {
+        super(lattice, id);
+        annotations = new Annotations[((TSLattice) lattice).alphas.length];
+        for (int k = 0; k < annotations.length; k++)
+            annotations[k] = new Annotations();
     }
 
     public void setValue(double value) {
@@ -27,122 +30,167 @@ public class TSLatticeNode extends LatticeNode {
     }
 
     void annotate() {
-        if (isLeaf && !annotated) {
-            Interval interval = value > 0 ? new Interval(value - value * alpha, value + value * alpha) :
-                    new Interval(value + value * alpha, value - value * alpha);
-            annotations.add(new Annotation(interval, 1, 0));
+        for (int dim = 0; dim < lattice.getDims(); dim++) {
+            for (int i = 0; i < getChildCount(dim); i++) {
+                TSLatticeNode child = (TSLatticeNode) getChild(dim, i);
+                if (!child.annotated) {
+                    child.annotate();
+                }
+            }
+        }
+        annotateCell();
+    }
+
+    // annotates this node for every alpha from the annotations of its children, which must all be annotated
+    // already. The children are looked up once per dimension and shared by all alphas
+    void annotateCell() {
+        TSLattice tsLattice = (TSLattice) lattice;
+        double[] alphas = tsLattice.alphas;
+        if (isLeaf) {
+            for (int k = 0; k < alphas.length; k++) {
+                double alpha = alphas[k];
+                if (value > 0)
+                    annotations[k].add(value - value * alpha, value + value * alpha, 1, 0);
+                else annotations[k].add(value + value * alpha, value - value * alpha, 1, 0);
+            }
         } else {
-            for (int dim = 0; dim < TSLattice.dims; dim++) {
-                if (!children.get(dim).isEmpty()) {
-                    for (LatticeNode child : children.get(dim))
-                        if (!((TSLatticeNode) child).annotated) {
-                            ((TSLatticeNode) child).annotate();
-                        }
-
-                    Map<IntervalPoint, IntervalPoint> pointMap = new HashMap<>();
-                    List<IntervalPoint> points = new ArrayList<>();
-
-                    for (LatticeNode child : children.get(dim)) {
-                        for (Annotation a : ((TSLatticeNode) child).annotations) {
-                            Utility.addPointIntervals(pointMap, points, a.proposedInterval);
-                        }
-                    }
-
-                    if (!points.isEmpty()) {
-                        List<double[]> mostOverlappedIntervals = Utility.getMostOverlappedIntervals(points, pointMap);
-
-                        for (double[] overlap : mostOverlappedIntervals) {
-                            int cost = 1; // 1 for the root node
-                            for (LatticeNode child : children.get(dim)) {
-                                cost += ((TSLatticeNode) child).getLeastCost();  // + cost of each child
-                                if (((TSLatticeNode) child).cheapestIncludes(overlap))
-                                    cost--; // but -1 if child matches root
-                            }
-                            Annotation a = new Annotation(new Interval(overlap[0], overlap[1]), cost, dim);
-                            annotations.add(a);
-                        }
-                    }
+            for (int dim = 0; dim < lattice.getDims(); dim++) {
+                if (hasChildren(dim)) {
+                    TSLatticeNode[] children = new TSLatticeNode[getChildCount(dim)];
+                    for (int i = 0; i < children.length; i++)
+                        children[i] = (TSLatticeNode) getChild(dim, i);
+                    for (int k = 0; k < alphas.length; k++)
+                        annotateDim(children, dim, k);
                 }
             }
-            filter();
         }
+        if (tsLattice.maxAnnotations > 0) {
+            int dropped = 0;
+            for (Annotations a : annotations)
+                dropped += a.prune(tsLattice.maxAnnotations);
+            // a node that is annotated again only changes the count of the lattice by the difference
+            if (dropped != droppedAnnotations)
+                tsLattice.droppedAnnotations.addAndGet(dropped - droppedAnnotations);
+            droppedAnnotations = dropped;
+        }
+        annotated = true;
+    }
+
+    // annotates the node again, e.g. after the value of the node or the annotations of one of its children
+    // have changed. Returns whether its annotations have changed, for any alpha
+    boolean reannotate() {
+        Annotations[] previous = annotations;
+        annotations = new Annotations[previous.length];
+        for (int k = 0; k < annotations.length; k++)
+            annotations[k] = new Annotations();
+        annotateCell();
+        for (int k = 0; k < annotations.length; k++) {
+            if (!annotations[k].sameAs(previous[k]))
+                return true;
+        }
+        return false;
+    }
+
+    void writeAnnotations(DataOutputStream out) throws IOException {
+        out.writeInt(droppedAnnotations);
+        for (Annotations a : annotations)
+            a.write(out);
+    }
+
+    // restores the annotations written by writeAnnotations(), for the same alphas, and returns the number of
+    // annotations of the node that the cap had dropped
+    int readAnnotations(DataInputStream in) throws IOException {
+        droppedAnnotations = in.readInt();
+        for (int k = 0; k < annotations.length; k++)
+            annotations[k] = Annotations.read(in);
         annotated = true;
+        return droppedAnnotations;
     }
 
-    TSNode constructSummary() {
-        TSNode root = new TSNode(null, this.name);
+    // adds the annotations for the alpha of the given index that come from the children in one dimension
+    private void annotateDim(TSLatticeNode[] children, int dim, int k) {
+        int n = 0;
+        int childrenCost = 0;
+        for (TSLatticeNode child : children) {
+            n += child.annotations[k].count;
+            childrenCost += child.annotations[k].leastCost;
+        }
+        if (n == 0)
+            return;
+        double[] childStarts = new double[n];
+        double[] childEnds = new double[n];
+        // every child takes part in the sweep with the union of its intervals, so that a child whose annotations
+        // overlap counts once: the cost of an interval is lowered by the children that match it, not by their
+        // intervals that contain it
+        n = 0;
+        for (TSLatticeNode child : children)
+            n = child.annotations[k].appendUnion(childStarts, childEnds, n);
+
+        List<double[]> mostOverlappedIntervals = Utility.getMostOverlappedIntervals(childStarts, childEnds, n);
+
+        for (double[] overlap : mostOverlappedIntervals) {
+            int cost = 1 + childrenCost; // 1 for the root node + cost of each child
+            for (TSLatticeNode child : children) {
+                // annotations of an annotated child are all optimal (filtered) already
+                if (child.annotations[k].intersects(overlap[0], overlap[1]))
+                    cost--; // but -1 if child matches root
+            }
+            annotations[k].add(overlap[0], overlap[1], cost, dim);
+        }
+    }
+
+    // the summary for the alpha of the given index
+    TSNode constructSummary(int k) {
+        TSNode root = new TSNode(null, lattice, id);
 
-        Annotation a = annotations.get(0); // get any annotation, all annotations at root are optimal
-        root.setWeight(a.proposedInterval.getMidPoint());
-        root.setClosestAncestorWeight(a.proposedInterval.getMidPoint());
-        constructSummaryHelper(root, children.get(a.dim));
+        Annotations a = annotations[k];
+        double midPoint = a.getMidPoint(0); // take any annotation, all annotations at root are optimal
+        root.setWeight(midPoint);
+        root.setClosestAncestorWeight(midPoint);
+        constructSummaryHelper(root, this, a.dims[0], k);
 
         return root;
     }
 
-    private void constructSummaryHelper(TSNode parent, List<LatticeNode> children) {
-        for (LatticeNode child : children) {
+    // adds the children of the node in the given dimension to the summary
+    private void constructSummaryHelper(TSNode parent, TSLatticeNode node, int dim, int k) {
+        for (int i = 0; i < node.getChildCount(dim); i++) {
+            TSLatticeNode child = (TSLatticeNode) node.getChild(dim, i);
+            Annotations a = child.annotations[k];
 
-            if (!((TSLatticeNode) child).annotations.isEmpty()) {
-                TSNode n = new TSNode(parent, child.name);
+            if (a.count > 0) {
+                TSNode n = new TSNode(parent, lattice, child.id);
 
                 parent.addChild(n);
 
-                int dim = -1;
-                for (Annotation a : ((TSLatticeNode) child).annotations) {
-                    if (a.proposedInterval.containsPoint(parent.getClosestAncestorWeight())) {
-                        n.setWeight(Double.NaN);
-                        n.setClosestAncestorWeight(parent.getClosestAncestorWeight());
-                        dim = a.dim;
-                        break;
-                    }
+                int childDim;
+                int match = a.find(parent.getClosestAncestorWeight());
+                if (match >= 0) {
+                    n.setWeight(Double.NaN);
+                    n.setClosestAncestorWeight(parent.getClosestAncestorWeight());
+                    childDim = a.dims[match];
+                } else {
+                    n.setWeight(a.getMidPoint(0));
+                    n.setClosestAncestorWeight(a.getMidPoint(0));
+                    childDim = a.dims[0];
                 }
-                if (dim == -1) {
-                    Annotation a = ((TSLatticeNode) child).annotations.get(0);
-                    n.setWeight(a.proposedInterval.getMidPoint());
-                    n.setClosestAncestorWeight(a.proposedInterval.getMidPoint());
-                    dim = a.dim;
-                }
-                constructSummaryHelper(n, ((TSLatticeNode) child).children.get(dim));
-            }
-        }
-    }
-
-    private boolean cheapestIncludes(double[] weight) {
-        filter();
-        for (Annotation a : annotations) {
-            if (a.proposedInterval.intersects(new Interval(weight[0], weight[1]))) {
-                return true;
+                constructSummaryHelper(n, child, childDim, k);
             }
         }
-        return false;
     }
 
-    // filters out suboptimal annotations
-    private void filter() {
-        int minCost = getLeastCost();
-        List<Annotation> temp = new ArrayList<>();
-        for (Annotation a : annotations) {
-            if (a.cost == minCost)
-                temp.add(a);
-        }
-        annotations = temp;
-    }
-
-    private int getLeastCost() {
-        Annotation minCostAnnotation = Collections.min(annotations, Comparator.comparing(a -> a.cost));
-        return minCostAnnotation.cost;
+    private void printAnnotations() {
+        for (Annotations a : annotations)
+            a.print();
     }
 
     public void printLatticeAnnotations() {
-        System.out.print(name);
-        for (Annotation a : annotations) {
-            System.out.print(" <[" + String.format("%.4f", a.proposedInterval.start) + ", " + String.format("%.4f", a.proposedInterval.end) + "], " + a.cost + ", " + a.dim + "> ");
-        }
+        System.out.print(getName());
+        printAnnotations();
         System.out.println();
-        for (List<LatticeNode> l : children) {
-            for (LatticeNode child : l) {
-                ((TSLatticeNode) child).printLatticeAnnotations(1);
+        for (int dim = 0; dim < lattice.getDims(); dim++) {
+            for (int i = 0; i < getChildCount(dim); i++) {
+                ((TSLatticeNode) getChild(dim, i)).printLatticeAnnotations(1);
             }
         }
     }
@@ -151,34 +199,32 @@ public class TSLatticeNode extends LatticeNode {
         for (int i = 0; i < spaces; i++)
             System.out.print("  ");
         if (!isLeaf)
-            System.out.print(name);
-        else System.out.print(name + ": ");
+            System.out.print(getName());
+        else System.out.print(getName() + ": ");
 
-        for (Annotation a : annotations) {
-            System.out.print(" <[" + String.format("%.4f", a.proposedInterval.start) + ", " + String.format("%.4f", a.proposedInterval.end) + "], " + a.cost + ", " + a.dim + "> ");
-        }
+        printAnnotations();
         System.out.println();
 
-        for (List<LatticeNode> l : children) {
-            for (LatticeNode child : l) {
-                ((TSLatticeNode) child).printLatticeAnnotations(spaces + 1);
+        for (int dim = 0; dim < lattice.getDims(); dim++) {
+            for (int i = 0; i < getChildCount(dim); i++) {
+                ((TSLatticeNode) getChild(dim, i)).printLatticeAnnotations(spaces + 1);
             }
         }
     }
 
     public void printNodeInfo() {
-        System.out.println("Node: " + name);
-        for (int dim = 0; dim < Lattice.dims; dim++) {
-            if (parents.get(dim) == null)
+        System.out.println("Node: " + getName());
+        for (int dim = 0; dim < lattice.getDims(); dim++) {
+            if (getParent(dim) == null)
                 System.out.println("Parent in dim#" + (dim + 1) + ": null");
-            else System.out.println("Parent in dim#" + (dim + 1) + ": " + parents.get(dim).name);
+            else System.out.println("Parent in dim#" + (dim + 1) + ": " + getParent(dim).getName());
         }
 
-        for (int dim = 0; dim < Lattice.dims; dim++) {
-            if (!children.get(dim).isEmpty()) {
+        for (int dim = 0; dim < lattice.getDims(); dim++) {
+            if (hasChildren(dim)) {
                 System.out.println("Children in dim#" + (dim + 1) + ": ");
-                for (LatticeNode n : children.get(dim)) {
-                    System.out.println(n.name + " ");
+                for (int i = 0; i < getChildCount(dim); i++) {
+                    System.out.println(getChild(dim, i).getName() + " ");
                 }
                 System.out.println();
             }
@@ -189,9 +235,7 @@ public class TSLatticeNode extends LatticeNode {
         }
 
         System.out.print("Annotations: ");
-        for (Annotation a : annotations) {
-            System.out.print(" <[" + String.format("%.4f", a.proposedInterval.start) + ", " + String.format("%.4f", a.proposedInterval.end) + "], " + a.cost + ", " + a.dim + "> ");
-        }
+        printAnnotations();
         System.out.println("\n");
     }
 }
@@ -1,19 +1,35 @@
 package treeSummary;
 
 import genericStructures.ReconstructionError;
-import genericStructures.LatticeNode;
+import genericStructures.Lattice;
+import genericStructures.SummaryArtifact;
 import genericStructures.TreeNode;
 import utilities.Utility;
 
 import java.io.BufferedWriter;
-import java.util.Map;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class TSNode extends TreeNode {
     private double weight; // if the weight is NaN, use the closestAncestorWeight as approximation
     private double closestAncestorWeight;
+    private Lattice lattice;
+    private int cell; // id of the lattice cell summarized by this node
 
-    TSNode(TSNode parent, String name) {
-        super(parent, name);
+    TSNode(TSNode parent, Lattice lattice, int cell) {
+        super(parent, null);
+        this.lattice = lattice;
+        this.cell = cell;
+    }
+
+    @Override
+    public String getName() {
+        return lattice.getIndex().getName(cell);
+    }
+
+    public int getCell() {
+        return cell;
     }
 
     void setWeight(double weight) {
@@ -72,14 +88,35 @@ public class TSNode extends TreeNode {
         return count;
     }
 
-    public ReconstructionError getReconstructionError(Map<String, LatticeNode> map, BufferedWriter bw) throws Exception {
+    // compiles the summary tree for lookups, see SummaryArtifact. Only the nodes with a weight are needed: the
+    // reconstructed value of a leaf is the weight of its closest ancestor in the tree that has one
+    public void writeArtifact(String filename) throws IOException {
+        List<TSNode> weighted = new ArrayList<>();
+        collectWeighted(weighted);
+        int[] cells = new int[weighted.size()];
+        double[] weights = new double[weighted.size()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = weighted.get(i).cell;
+            weights[i] = weighted.get(i).weight;
+        }
+        SummaryArtifact.write(lattice.getIndex(), cells, weights, false, Double.NaN, filename);
+    }
+
+    private void collectWeighted(List<TSNode> weighted) {
+        if (!Double.isNaN(weight))
+            weighted.add(this);
+        for (TreeNode child : getChildren())
+            ((TSNode) child).collectWeighted(weighted);
+    }
+
+    public ReconstructionError getReconstructionError(BufferedWriter bw) throws Exception {
         ReconstructionError error = new ReconstructionError();
-        return getReconstructionErrorHelper(error, map, bw);
+        return getReconstructionErrorHelper(error, bw);
     }
 
-    private ReconstructionError getReconstructionErrorHelper(ReconstructionError error, Map<String, LatticeNode> map, BufferedWriter bw) throws Exception {
+    private ReconstructionError getReconstructionErrorHelper(ReconstructionError error, BufferedWriter bw) throws Exception {
         if (getChildren().isEmpty()) {
-            double origVal = map.get(getName()).getValue();
+            double origVal = lattice.getValue(cell);
             double e = Utility.calculateSMAPE(origVal, closestAncestorWeight);
             error.sum += e;
             if (e > error.worst)
@@ -88,7 +125,7 @@ public class TSNode extends TreeNode {
                 bw.write(e + ",");
         } else {
             for (TreeNode child : getChildren())
-                ((TSNode) child).getReconstructionErrorHelper(error, map, bw);
+                ((TSNode) child).getReconstructionErrorHelper(error, bw);
         }
         return error;
     }
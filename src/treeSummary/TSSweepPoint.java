@@ -0,0 +1,20 @@
+package treeSummary;
+
+import genericStructures.ReconstructionError;
+
+// the result of TreeSummary for one alpha of a sweep
+public class TSSweepPoint {
+    public double alpha;
+    public TSNode summary;
+    public int size; // size of the summary tree
+    public ReconstructionError error;
+    public double averageError; // error.sum over the number of leaves of the lattice
+
+    TSSweepPoint(double alpha, TSNode summary, ReconstructionError error, int leaves) {
+        this.alpha = alpha;
+        this.summary = summary;
+        this.size = summary.getTsSize();
+        this.error = error;
+        this.averageError = error.sum / leaves;
+    }
+}
@@ -1,64 +1,47 @@
 package utilities;
 
-import main.Main;
-import genericStructures.Interval;
-import genericStructures.IntervalPoint;
-
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.util.*;
 
 public class Utility {
 
-    public static void addPointIntervals(Map<IntervalPoint, IntervalPoint> pointMap, List<IntervalPoint> points, Interval interval) {
-        IntervalPoint start = new IntervalPoint(true, new Interval(interval.start, interval.end));
-        IntervalPoint end = new IntervalPoint(false, new Interval(interval.start, interval.end));
-
-        points.add(start);
-        points.add(end);
-
-        pointMap.put(end, start);
-    }
-
-    public static List<double[]> getMostOverlappedIntervals(List<IntervalPoint> points, Map<IntervalPoint, IntervalPoint> pointMap) {
-        Collections.sort(points);
-
-        List<IntervalPoint> curOverlap = new ArrayList<>();
-        List<List<IntervalPoint>> mostOverlappedIntervalsPoints = new ArrayList<>();
-        mostOverlappedIntervalsPoints.add(new ArrayList<>());
-
-        for (IntervalPoint cur : points) {
-            if (cur.isStartPoint()) {
-                curOverlap.add(cur);
-            } else {
-                curOverlap.remove(pointMap.get(cur));
-            }
-
-            if (curOverlap.size() == mostOverlappedIntervalsPoints.get(0).size()) {
-                mostOverlappedIntervalsPoints.add(new ArrayList(curOverlap));
-            } else if (curOverlap.size() > mostOverlappedIntervalsPoints.get(0).size()) {
-                mostOverlappedIntervalsPoints.clear();
-                mostOverlappedIntervalsPoints.add(new ArrayList(curOverlap));
-            }
+    // Sweeps the intervals [starts[i], ends[i]], i < n, and returns the intersections of the largest groups of
+    // overlapping intervals in increasing order (or a single unbounded interval if there are no intervals).
+    // Both arrays are sorted in place, independently of each other: an overlap can only become a largest
+    // one at a start point that is followed by an end point in the sweep, and then its latest start is that
+    // start point and its earliest end is the next end point. So the sweep only needs a counter of open
+    // intervals and no object per point. At equal points, intervals start before others end.
+    public static List<double[]> getMostOverlappedIntervals(double[] starts, double[] ends, int n) {
+        List<double[]> mostOverlappedIntervals = new ArrayList<>();
+        if (n == 0) {
+            mostOverlappedIntervals.add(new double[]{Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY});
+            return mostOverlappedIntervals;
         }
+        Arrays.sort(starts, 0, n);
+        Arrays.sort(ends, 0, n);
+
+        int open = 0;
+        int maxOpen = 0;
+        int e = 0;
+        for (int s = 0; s < n; s++) {
+            while (ends[e] < starts[s]) {
+                e++;
+                open--;
+            }
+            open++;
+            if (s + 1 < n && starts[s + 1] <= ends[e])
+                continue; // the next point is a start, so the overlap keeps growing
 
-        List<double[]> mostOverlappedIntervals = new ArrayList<>();
-        for (List<IntervalPoint> list : mostOverlappedIntervalsPoints) {
-            double latestStart = Double.NEGATIVE_INFINITY;
-            double earliestEnd = Double.POSITIVE_INFINITY;
-            for (IntervalPoint p : list) {
-                if (p.getInterval().start > latestStart)
-                    latestStart = p.getInterval().start;
-                if (p.getInterval().end < earliestEnd)
-                    earliestEnd = p.getInterval().end;
+            if (open > maxOpen) {
+                maxOpen = open;
+                mostOverlappedIntervals.clear();
             }
-            mostOverlappedIntervals.add(new double[]{latestStart, earliestEnd});
+            if (open == maxOpen)
+                mostOverlappedIntervals.add(new double[]{starts[s], ends[e]});
         }
 
         return mostOverlappedIntervals;
     }
 
-
     public static double calculateSMAPE(double origVal, double recVal) {
         if (origVal == 0 && recVal == 0)
             return 0;
@@ -69,23 +52,4 @@ public class Utility {
         int scale = (int) Math.pow(10, precision);
         return Math.ceil(value * scale) / scale;
     }
-
-    // toRound is a boolean to indicate whether or not you would like to round the
-    // raw values to one decimal place
-    public static void readValuesFile(boolean toRound, String valuesFile) {
-        Main.valMap = new HashMap<>();
-        BufferedReader br;
-        String line;
-        try {
-            br = new BufferedReader(new FileReader(valuesFile));
-            while ((line = br.readLine()) != null && !line.isEmpty()) {
-                String[] attr = line.split(";");
-                if (toRound) Main.valMap.put(attr[0], Utility.round(Double.parseDouble(attr[1]), 1));
-                else Main.valMap.put(attr[0], Double.parseDouble(attr[1]));
-            }
-            br.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
 }